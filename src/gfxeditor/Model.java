@@ -1,21 +1,28 @@
 package gfxeditor;
 
-import gfxeditor.decorators.Decorator;
-import gfxeditor.decorators.NumberDecorator;
-import gfxeditor.decorators.SelectionDecorator;
+import gfxeditor.event.CollisionEvent;
+import gfxeditor.event.CollisionListener;
 import gfxeditor.event.GraphicsEvent;
 import gfxeditor.event.GraphicsListener;
+import gfxeditor.index.RTree;
+import gfxeditor.index.SweepAndPrune;
 import gfxeditor.visitors.BackwardVisitor;
+import gfxeditor.visitors.BulkTransform;
 import gfxeditor.visitors.ForwardVisitor;
 import gfxeditor.visitors.Visitor;
+import java.awt.Color;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Set;
 import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
@@ -25,6 +32,17 @@ import javax.swing.event.ListDataListener;
  * also serves as a data model for the <code>JList</code> used in
  * <code>DocumentWindow</code>.
  *
+ * <p>The shapes are kept in a <code>ShapeStore</code>, which finds shapes by their
+ * id and determines their z-order position in logarithmic time.
+ * The bounds of all shapes are kept in a spatial index, so that
+ * hit tests and region queries only need to examine the shapes near
+ * the given point or area.
+ * The selection is a set of shape ids; selecting a shape doesn't change
+ * the list of shapes at all.
+ * <br>After every change, the model publishes an immutable
+ * <code>Snapshot</code> of its shapes, which other threads can read without
+ * locks while the model is edited.
+ *
  * @author vbwx
  * @version 2.0
  * @see gfxeditor.event.GraphicsEvent
@@ -33,8 +51,13 @@ public class Model implements ListModel
 {
 	private Set<GraphicsListener> graphicsListeners;
 	private Set<ListDataListener> dataListeners;
-	private List<Shape> shapes;
+	private ShapeStore shapes;
 	private Shape selected, current;
+	private Set<Integer> selection;
+	private RTree<Shape> index;
+	private Set<CollisionListener> collisionListeners;
+	private volatile SweepAndPrune collisions;
+	private volatile Snapshot snapshot;
 
 	private static final byte ADDED = 1, DELETED = 2, CHANGED = 3, SELECTED = 4;
 
@@ -49,10 +72,34 @@ public class Model implements ListModel
 
 	/**
 	 * Returns the currently selected shape.
+	 * If several shapes are selected, this is the one that has been selected
+	 * explicitly or, if there is none, the top-most one.
 	 * @return The currently selected <code>Shape</code> object
 	 */
 	public Shape getSelected () { return selected; }
 
+	/**
+	 * Returns the ids of all selected shapes.
+	 * @return An unmodifiable set of shape ids
+	 * @see #getShape(int)
+	 * @since 2.1
+	 */
+	public Set<Integer> getSelection ()
+	{
+		return Collections.unmodifiableSet(selection);
+	}
+
+	/**
+	 * Checks if a shape is selected.
+	 * @param s The <code>Shape</code> object to check
+	 * @return <code>true</code> if the shape is part of the selection
+	 * @since 2.1
+	 */
+	public boolean isSelected (Shape s)
+	{
+		return s != null && selection.contains(s.getId());
+	}
+
 	/**
 	 * Returns the newly created shape.
 	 * @return The newly created <code>Shape</code> object
@@ -66,12 +113,10 @@ public class Model implements ListModel
 	 */
 	public void setSelected (Shape s)
 	{
-		if (selected == s) return;
-		selected = removeSelectionDecorator(selected);
-		if (s != null)
-			selected = addSelectionDecorator(s);
-		fireGraphicsEvent(selected, CHANGED);
-		fireGraphicsEvent(selected, SELECTED);
+		if (selected == s && selection.size() <= 1) return;
+		Set<Integer> sel = new HashSet<Integer>();
+		if (s != null) sel.add(s.getId());
+		select(sel, s);
 	}
 
 	/**
@@ -81,9 +126,24 @@ public class Model implements ListModel
 	{
 		graphicsListeners = new HashSet<GraphicsListener>();
 		dataListeners = new HashSet<ListDataListener>();
-		shapes = new LinkedList<Shape>();
+		shapes = new ShapeStore();
+		index = new RTree<Shape>();
+		selection = new HashSet<Integer>();
+		collisionListeners = new HashSet<CollisionListener>();
+		snapshot = new Snapshot();
 	}
 
+	/**
+	 * Returns the current version of the shapes.
+	 * This method can be called from any thread; the snapshot stays the same
+	 * while the model is changed, and it shares most of its structure with
+	 * the snapshots before and after.
+	 * @return An immutable list of frozen copies of the shapes, ordered from
+	 * the bottom-most to the top-most shape
+	 * @since 2.1
+	 */
+	public Snapshot getSnapshot () { return snapshot; }
+
 	/**
 	 * Returns the registered graphics listeners.
 	 * @return An array of <code>GraphicsListener</code> objects
@@ -111,9 +171,52 @@ public class Model implements ListModel
 		if (l != null) graphicsListeners.add(l);
 	}
 
+	/**
+	 * Registers a collision listener for this model.
+	 * From now on, the model keeps track of overlapping shapes after every
+	 * animation step, until the last collision listener has been removed;
+	 * collision listeners are always notified on the event dispatch thread.
+	 * Shapes that already overlap when the first listener is registered
+	 * are not reported.
+	 * @param l The <code>CollisionListener</code> object to be registered
+	 * @see SweepAndPrune
+	 * @since 2.1
+	 */
+	public void addCollisionListener (CollisionListener l)
+	{
+		if (l == null) return;
+		collisionListeners.add(l);
+		if (collisions == null) {
+			SweepAndPrune c = new SweepAndPrune();
+			c.update(shapes);
+			collisions = c;
+		}
+	}
+
+	/**
+	 * Removes a collision listener from this model.
+	 * @param l The <code>CollisionListener</code> object to be removed
+	 * @since 2.1
+	 */
+	public void removeCollisionListener (CollisionListener l)
+	{
+		if (l != null) collisionListeners.remove(l);
+		if (collisionListeners.isEmpty()) collisions = null;
+	}
+
 	private void fireGraphicsEvent (Shape s, byte cause)
 	{
-		GraphicsEvent e = new GraphicsEvent(this, s);
+		fire(new GraphicsEvent(this, s), cause);
+	}
+
+	private void fireGraphicsEvent (Shape s, byte cause,
+	                                Rectangle oldBounds, Rectangle newBounds)
+	{
+		fire(new GraphicsEvent(this, s, oldBounds, newBounds), cause);
+	}
+
+	private void fire (GraphicsEvent e, byte cause)
+	{
 		for (GraphicsListener l : graphicsListeners) {
 			switch (cause) {
 			case ADDED:    l.shapeAdded(e);    break;
@@ -124,9 +227,9 @@ public class Model implements ListModel
 		}
 	}
 
-	private void fireListDataEvent (int cause, int index)
+	private void fireListDataEvent (int cause, int index0, int index1)
 	{
-		ListDataEvent e = new ListDataEvent(this, cause, index, index);
+		ListDataEvent e = new ListDataEvent(this, cause, index0, index1);
 		for (ListDataListener l : dataListeners) {
 			switch (cause) {
 			case ListDataEvent.INTERVAL_ADDED:   l.intervalAdded(e);   break;
@@ -146,9 +249,37 @@ public class Model implements ListModel
 	{
 		if (s == null) return;
 		shapes.add(s);
+		index.insert(s, s.getBounds());
+		snapshot = snapshot.insert(shapes.size()-1, s);
 		current = s;
-		fireListDataEvent(ListDataEvent.INTERVAL_ADDED, shapes.size()-1);
-		fireGraphicsEvent(s, ADDED);
+		fireListDataEvent(ListDataEvent.INTERVAL_ADDED, shapes.size()-1, shapes.size()-1);
+		fireGraphicsEvent(s, ADDED, null, s.getBounds());
+	}
+
+	/**
+	 * Adds several shapes to this model at once, on top of the others.
+	 * Fires a single <code>ListDataEvent</code> and a single
+	 * <code>GraphicsEvent</code> covering all of them, rather than one per shape.
+	 * The <code>current</code> property isn't changed.
+	 * @param batch The <code>Shape</code> objects to be added
+	 * @since 2.1
+	 */
+	public void addAll (List<Shape> batch)
+	{
+		int first = shapes.size();
+		Rectangle damage = null;
+		Snapshot next = snapshot;
+		for (Shape s : batch) {
+			if (s == null) continue;
+			shapes.add(s);
+			index.insert(s, s.getBounds());
+			next = next.insert(shapes.size()-1, s);
+			damage = union(damage, s.getBounds());
+		}
+		if (damage == null) return;
+		snapshot = next;
+		fireListDataEvent(ListDataEvent.INTERVAL_ADDED, first, shapes.size()-1);
+		fireGraphicsEvent(null, ADDED, null, damage);
 	}
 
 	/**
@@ -163,8 +294,11 @@ public class Model implements ListModel
 	{
 		if (current == null) return;
 		if (useDefaults) {
+			Rectangle old = current.getBounds();
 			current.setToDefaults();
-			fireGraphicsEvent(current, CHANGED);
+			updateBounds(current);
+			freeze(current);
+			fireGraphicsEvent(current, CHANGED, old, current.getBounds());
 		}
 		if (current.isInvisible())
 			delete(current);
@@ -182,13 +316,83 @@ public class Model implements ListModel
 	public void delete (Shape s)
 	{
 		if (s == null) return;
-		int idx = shapes.indexOf(s);
+		int idx = shapes.positionOf(s.getId());
 		if (idx == -1) return;
-		shapes.remove(s);
+		Rectangle old = s.getBounds();
+		shapes.remove(idx);
+		index.remove(s);
+		snapshot = snapshot.delete(idx);
+		selection.remove(s.getId());
 		if (s == selected) selected = null;
 		s = null;
-		fireListDataEvent(ListDataEvent.INTERVAL_REMOVED, idx);
-		fireGraphicsEvent(s, DELETED);
+		fireListDataEvent(ListDataEvent.INTERVAL_REMOVED, idx, idx);
+		fireGraphicsEvent(s, DELETED, old, null);
+	}
+
+	/**
+	 * Removes all selected shapes from this model.
+	 * The shapes are removed in a single pass, and only one
+	 * <code>GraphicsEvent</code> is fired to the registered views, along with one
+	 * <code>ListDataEvent</code> for each run of adjacent shapes, starting
+	 * with the top-most one.
+	 * @since 2.1
+	 */
+	public void deleteSelection ()
+	{
+		if (selection.isEmpty()) return;
+		int[] removed = new int[selection.size()];
+		int n = 0;
+		for (int id : selection)
+			removed[n++] = shapes.positionOf(id);
+		Arrays.sort(removed);
+		Rectangle old = null;
+		Snapshot next = snapshot;
+		for (int i = n - 1; i >= 0; i--) {
+			Shape s = shapes.remove(removed[i]);
+			next = next.delete(removed[i]);
+			old = union(old, s.getBounds());
+			index.remove(s);
+			if (s == current) current = null;
+		}
+		snapshot = next;
+		selection = new HashSet<Integer>();
+		selected = null;
+		for (int last = n - 1; last >= 0; ) {
+			int first = last;
+			while (first > 0 && removed[first-1] == removed[first] - 1)
+				first--;
+			fireListDataEvent(ListDataEvent.INTERVAL_REMOVED, removed[first], removed[last]);
+			last = first - 1;
+		}
+		fireGraphicsEvent(null, DELETED, old, null);
+	}
+
+	/**
+	 * Returns the top-most shape at the given point.
+	 * Only the shapes whose bounds contain the point are examined.
+	 * @param p The position to look at
+	 * @return The <code>Shape</code> object, or <code>null</code>
+	 * if there is no shape at this position
+	 * @see Shape#contains(Point)
+	 * @since 2.1
+	 */
+	public Shape shapeAt (Point p)
+	{
+		if (p == null) return null;
+		List<Shape> candidates = new ArrayList<Shape>();
+		index.search(p.x, p.y, candidates);
+		Shape hit = null;
+		int z = -1;
+		for (Shape s : candidates) {
+			if (s.contains(p)) {
+				int i = shapes.positionOf(s.getId());
+				if (i > z) {
+					hit = s;
+					z = i;
+				}
+			}
+		}
+		return hit;
 	}
 
 	/**
@@ -197,27 +401,69 @@ public class Model implements ListModel
 	 * If shapes are overlapping, the one above the other, i.e., the newer one is
 	 * selected. Also fires a <code>GraphicsEvent</code> to the registered views.
 	 * @param p The position where the mouse button has been pressed
-	 * @see Shape#contains(Point)
+	 * @see #shapeAt(Point)
 	 */
 	public void select (Point p)
 	{
 		if (p == null) return;
-		ListIterator<Shape> li = shapes.listIterator(shapes.size());
-		Shape sel = selected;
-		selected = null;
-		while (li.hasPrevious()) {
-			Shape s = li.previous();
-			if (s.contains(p)) {
-				selected = s;
-				break;
+		Shape hit = shapeAt(p);
+		if (hit == selected && selection.size() <= 1) return;
+		Set<Integer> sel = new HashSet<Integer>();
+		if (hit != null) sel.add(hit.getId());
+		select(sel, hit);
+	}
+
+	/**
+	 * Selects all shapes that lie completely inside the given region.
+	 * The region can be a rectangle (marquee selection) or any closed path
+	 * (lasso selection). Only the shapes whose bounds intersect the bounds of the
+	 * region are examined. Also fires a <code>GraphicsEvent</code> to the
+	 * registered views.
+	 * @param region The area enclosing the shapes to be selected
+	 * @param extend <code>true</code> if the shapes are to be added to the current
+	 * selection
+	 * @see #shapesIn(Rectangle2D)
+	 * @since 2.1
+	 */
+	public void selectIn (java.awt.Shape region, boolean extend)
+	{
+		if (region == null) return;
+		List<Shape> candidates = new ArrayList<Shape>();
+		index.search(region.getBounds2D(), candidates);
+		Set<Integer> sel = new HashSet<Integer>();
+		if (extend) sel.addAll(selection);
+		for (Shape s : candidates) {
+			if (region.contains(s.getBounds()))
+				sel.add(s.getId());
+		}
+		if (sel.isEmpty() && selection.isEmpty()) return;
+		select(sel, extend ? selected : null);
+	}
+
+	/**
+	 * Replaces the selection.
+	 * If no primary shape is given, the top-most selected shape becomes the
+	 * <code>selected</code> one. The damaged area of the fired events only
+	 * covers the shapes that have been selected or deselected.
+	 */
+	private void select (Set<Integer> sel, Shape primary)
+	{
+		Rectangle damage = null;
+		for (int id : selection)
+			if (!sel.contains(id)) damage = union(damage, shapes.getById(id).getBounds());
+		for (int id : sel)
+			if (!selection.contains(id)) damage = union(damage, shapes.getById(id).getBounds());
+		selection = sel;
+		int z = primary == null ? -1 : shapes.positionOf(primary.getId());
+		if (z == -1) {
+			for (int id : sel) {
+				int i = shapes.positionOf(id);
+				if (i > z) z = i;
 			}
 		}
-		if (selected == sel) return;
-		removeSelectionDecorator(sel);
-		if (selected != null)
-			selected = addSelectionDecorator(selected);
-		fireGraphicsEvent(selected, CHANGED);
-		fireGraphicsEvent(selected, SELECTED);
+		selected = z == -1 ? null : shapes.get(z);
+		fireGraphicsEvent(selected, CHANGED, damage, damage);
+		fireGraphicsEvent(selected, SELECTED, damage, damage);
 	}
 
 	/**
@@ -231,8 +477,11 @@ public class Model implements ListModel
 	public void resize (Point p)
 	{
 		if (current == null || p == null) return;
+		Rectangle old = current.getBounds();
 		current.setSize(p.x - current.getX(), p.y - current.getY());
-		fireGraphicsEvent(current, CHANGED);
+		updateBounds(current);
+		freeze(current);
+		fireGraphicsEvent(current, CHANGED, old, current.getBounds());
 	}
 
 	/**
@@ -246,8 +495,11 @@ public class Model implements ListModel
 	public void resizeSelected (Point p)
 	{
 		if (selected == null || p == null) return;
+		Rectangle old = selected.getBounds();
 		selected.setSize(p.x - selected.getX(), p.y - selected.getY());
-		fireGraphicsEvent(selected, CHANGED);
+		updateBounds(selected);
+		freeze(selected);
+		fireGraphicsEvent(selected, CHANGED, old, selected.getBounds());
 	}
 
 	/**
@@ -259,8 +511,11 @@ public class Model implements ListModel
 	public void move (Point p)
 	{
 		if (current == null || p == null) return;
+		Rectangle old = current.getBounds();
 		current.setPosition(p);
-		fireGraphicsEvent(current, CHANGED);
+		updateBounds(current);
+		freeze(current);
+		fireGraphicsEvent(current, CHANGED, old, current.getBounds());
 	}
 
 	/**
@@ -272,8 +527,180 @@ public class Model implements ListModel
 	public void moveSelected (Point p)
 	{
 		if (selected == null || p == null) return;
+		Rectangle old = selected.getBounds();
 		selected.setPosition(p);
-		fireGraphicsEvent(selected, CHANGED);
+		updateBounds(selected);
+		freeze(selected);
+		fireGraphicsEvent(selected, CHANGED, old, selected.getBounds());
+	}
+
+	/**
+	 * Moves all selected shapes by the given distance.
+	 * Also fires a single <code>GraphicsEvent</code> to the registered views.
+	 * @param dx The horizontal distance, in pixels
+	 * @param dy The vertical distance, in pixels
+	 * @since 2.1
+	 */
+	public void moveSelection (int dx, int dy)
+	{
+		if (selection.isEmpty() || (dx == 0 && dy == 0)) return;
+		Point p = new Point();
+		Rectangle old = null, bounds = null;
+		Snapshot next = snapshot;
+		for (int id : selection) {
+			Shape s = shapes.getById(id);
+			old = union(old, s.getBounds());
+			p.setLocation(s.getX() + dx, s.getY() + dy);
+			s.setPosition(p);
+			updateBounds(s);
+			next = next.replace(shapes.positionOf(id), s);
+			bounds = union(bounds, s.getBounds());
+		}
+		snapshot = next;
+		fireGraphicsEvent(selected, CHANGED, old, bounds);
+	}
+
+	/**
+	 * Sets the fill color of all selected shapes.
+	 * Also fires a single <code>GraphicsEvent</code> to the registered views.
+	 * @param c The new fill color
+	 * @see Shape#setColor(Color)
+	 * @since 2.1
+	 */
+	public void recolorSelection (Color c)
+	{
+		if (selection.isEmpty() || c == null) return;
+		Rectangle bounds = null;
+		Snapshot next = snapshot;
+		for (int id : selection) {
+			Shape s = shapes.getById(id);
+			s.setColor(c);
+			next = next.replace(shapes.positionOf(id), s);
+			bounds = union(bounds, s.getBounds());
+		}
+		snapshot = next;
+		fireGraphicsEvent(selected, CHANGED, bounds, bounds);
+	}
+
+	/**
+	 * Returns the shape with the given id.
+	 * @param id The unique id of the shape
+	 * @return A <code>Shape</code> object, or <code>null</code> if there is no
+	 * shape with this id
+	 * @see Shape#getId()
+	 * @since 2.1
+	 */
+	public Shape getShape (int id)
+	{
+		return shapes.getById(id);
+	}
+
+	/**
+	 * Fires a <code>GraphicsEvent</code> for a shape whose appearance has changed
+	 * without the model being involved, e.g., because its image has been loaded.
+	 * Nothing happens if the shape isn't part of the model (anymore).
+	 * @param s The <code>Shape</code> object to be repainted
+	 * @since 2.1
+	 */
+	public void refresh (Shape s)
+	{
+		if (s == null || shapes.getById(s.getId()) != s) return;
+		freeze(s);
+		Rectangle r = s.getBounds();
+		fireGraphicsEvent(s, CHANGED, r, r);
+	}
+
+	/**
+	 * Fires a single <code>GraphicsEvent</code> after any number of shapes have
+	 * been changed without the model being involved, e.g., by an animation.
+	 * Also updates the spatial index.
+	 * @since 2.1
+	 */
+	public void refresh ()
+	{
+		updateBounds();
+		snapshot = snapshot.refreeze(shapes);
+		fireGraphicsEvent(null, CHANGED);
+		detectCollisions();
+	}
+
+	/**
+	 * Fires a single <code>GraphicsEvent</code> after some of the shapes have
+	 * been changed without the model being involved, e.g., by an animation.
+	 * Only the changed shapes are updated in the spatial index and the
+	 * snapshot, and only the area they covered before and after the change
+	 * is repainted, so this takes time in proportion to the number of
+	 * changed shapes rather than all shapes.
+	 * Shapes that aren't part of the model (anymore) are ignored.
+	 * @param changed The <code>Shape</code> objects that have been changed
+	 * @since 2.1
+	 */
+	public void refresh (Collection<Shape> changed)
+	{
+		Rectangle old = null, bounds = null;
+		Snapshot next = snapshot;
+		for (Shape s : changed) {
+			if (s == null || shapes.getById(s.getId()) != s) continue;
+			int pos = shapes.positionOf(s.getId());
+			old = union(old, next.get(pos).getBounds());
+			updateBounds(s);
+			next = next.replace(pos, s);
+			bounds = union(bounds, s.getBounds());
+		}
+		if (bounds == null) return;
+		snapshot = next;
+		fireGraphicsEvent(null, CHANGED, old, bounds);
+	}
+
+	/**
+	 * Returns the z-order position of a shape.
+	 * @param s The <code>Shape</code> object to look for
+	 * @return The number of the shape within the list, or -1 if it isn't part of
+	 * this model
+	 * @since 2.1
+	 */
+	public int indexOf (Shape s)
+	{
+		return s == null ? -1 : shapes.positionOf(s.getId());
+	}
+
+	/**
+	 * Returns the shapes whose bounds intersect the given area.
+	 * The spatial index is used, so that shapes far away from the area are
+	 * not examined at all.
+	 * @param r The area to be searched
+	 * @return A list of <code>Shape</code> objects, ordered from the bottom-most
+	 * to the top-most shape
+	 * @see Shape#getBounds()
+	 */
+	public List<Shape> shapesIn (Rectangle2D r)
+	{
+		List<Shape> result = new ArrayList<Shape>();
+		if (r == null) return result;
+		index.search(r, result);
+		shapes.sort(result);
+		return result;
+	}
+
+	/**
+	 * Returns the frozen copies of the shapes whose bounds intersect the given
+	 * area, as they are in the current snapshot, so that they can be rendered
+	 * by other threads while the model is edited.
+	 * This method must be called by the thread that edits the model.
+	 * @param r The area to be searched
+	 * @return A list of frozen <code>Shape</code> objects, ordered from the
+	 * bottom-most to the top-most shape
+	 * @see #shapesIn(Rectangle2D)
+	 * @see #getSnapshot()
+	 * @since 2.1
+	 */
+	public List<Shape> snapshotIn (Rectangle2D r)
+	{
+		List<Shape> result = shapesIn(r);
+		Snapshot snap = snapshot;
+		for (int i = 0; i < result.size(); i++)
+			result.set(i, snap.get(shapes.positionOf(result.get(i).getId())));
+		return result;
 	}
 
 	/**
@@ -313,62 +740,111 @@ public class Model implements ListModel
 		if (l != null) dataListeners.remove(l);
 	}
 
-	public void addNumberDecorators ()
+	private static Rectangle union (Rectangle r, Rectangle bounds)
 	{
-		ListIterator<Shape> li = shapes.listIterator();
-		while (li.hasNext()) {
-			Shape s = li.next();
-			if (!(s instanceof NumberDecorator))
-				li.set(new NumberDecorator(s));
-		}
-		fireGraphicsEvent(null, CHANGED);
+		if (r == null) return bounds;
+		r.add(bounds);
+		return r;
 	}
 
-	public void removeNumberDecorators ()
+	private void updateBounds (Shape s)
 	{
-		ListIterator<Shape> li = shapes.listIterator();
-		while (li.hasNext()) {
-			Shape s = li.next();
-			if (s instanceof NumberDecorator)
-				li.set(((Decorator)s).getContent());
-		}
-		fireGraphicsEvent(null, CHANGED);
+		index.update(s, s.getBounds());
 	}
 
-	private Shape addSelectionDecorator (Shape sel)
+	private void freeze (Shape s)
 	{
-		int idx = shapes.indexOf(sel);
-		if (idx >= 0) {
-			Shape decoration = new SelectionDecorator(sel);
-			shapes.set(idx, decoration);
-			return decoration;
-		}
-		return sel;
+		snapshot = snapshot.replace(shapes.positionOf(s.getId()), s);
 	}
 
-	private Shape removeSelectionDecorator (Shape sel)
+	private void updateBounds ()
 	{
-		int idx = shapes.indexOf(sel);
-		if (idx >= 0 && sel instanceof SelectionDecorator) {
-			Shape content = ((Decorator)sel).getContent();
-			shapes.set(idx, content);
-		}
-		return null;
+		for (Shape s : shapes)
+			updateBounds(s);
 	}
 
 	public void animateForwards (int speed)
 	{
-		Visitor animator = new ForwardVisitor(speed);
-		for (Shape s : shapes)
-			s.accept(animator);
-		fireGraphicsEvent(null, CHANGED);
+		animate(new ForwardVisitor(speed));
 	}
 
 	public void animateBackwards (int speed)
 	{
-		Visitor animator = new BackwardVisitor(speed);
-		for (Shape s : shapes)
-			s.accept(animator);
+		animate(new BackwardVisitor(speed));
+	}
+
+	/**
+	 * Applies a visitor to all shapes at once, and then fires a single
+	 * <code>GraphicsEvent</code> for all changes.
+	 * The spatial index is updated afterwards, on the calling thread.
+	 * @param animator The visitor that modifies the shapes
+	 * @see Visitor#visitAll(BulkTransform)
+	 */
+	private void animate (Visitor animator)
+	{
+		BulkTransform bulk = new BulkTransform(shapes);
+		animator.visitAll(bulk);
+		bulk.sync();
+		updateBounds();
+		snapshot = snapshot.refreeze(shapes);
 		fireGraphicsEvent(null, CHANGED);
+		detectCollisions();
+	}
+
+	private void detectCollisions ()
+	{
+		detectCollisions(shapes);
+	}
+
+	/**
+	 * Finds the shapes that have started or stopped overlapping after an
+	 * animation step, and notifies the collision listeners.
+	 * The step may have been applied to copies of the shapes, e.g., by an
+	 * animation that is simulated on another thread; the copies must keep
+	 * the ids of the shapes, and the events report the shapes of the model
+	 * with these ids. A pair that has stopped overlapping because a shape has
+	 * been removed from the model is reported with the shape that was passed.
+	 * <br>This method may be called by any thread, one at a time; the
+	 * listeners are notified on the event dispatch thread.
+	 * @param step The shapes, or copies of them, after the step
+	 * @see Shape#copy()
+	 * @since 2.1
+	 */
+	public void detectCollisions (List<Shape> step)
+	{
+		SweepAndPrune c = collisions;
+		if (c == null) return;
+		final List<Shape[]> started, ended;
+		synchronized (c) {
+			c.update(step);
+			started = c.getStarted();
+			ended = c.getEnded();
+		}
+		if (started.isEmpty() && ended.isEmpty()) return;
+		if (SwingUtilities.isEventDispatchThread()) {
+			fireCollisions(started, ended);
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run () { fireCollisions(started, ended); }
+			});
+		}
+	}
+
+	private void fireCollisions (List<Shape[]> started, List<Shape[]> ended)
+	{
+		for (Shape[] pair : ended) {
+			Shape a = shapes.getById(pair[0].getId()), b = shapes.getById(pair[1].getId());
+			CollisionEvent e = new CollisionEvent(this, a != null ? a : pair[0],
+			                                      b != null ? b : pair[1]);
+			for (CollisionListener l : collisionListeners)
+				l.collisionEnded(e);
+		}
+		for (Shape[] pair : started) {
+			Shape a = shapes.getById(pair[0].getId()), b = shapes.getById(pair[1].getId());
+			if (a == null || b == null) continue; // removed meanwhile
+			CollisionEvent e = new CollisionEvent(this, a, b);
+			for (CollisionListener l : collisionListeners)
+				l.collisionStarted(e);
+		}
 	}
 }
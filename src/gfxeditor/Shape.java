@@ -4,6 +4,7 @@ import gfxeditor.visitors.Visitor;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 
 // Stage 1
 /**
@@ -27,8 +28,27 @@ import java.awt.Point;
  */
 public abstract class Shape implements Cloneable
 {
-	private int x, y, borderWidth;
-	private Color color, borderColor;
+	private int x, y;
+	private Color color;
+	private int style;
+	private int id;
+	private boolean frozen;
+
+	/**
+	 * Returns the unique id of this shape.
+	 * The id is assigned when the shape is added to a model for the first time;
+	 * unlike the internal number, it's unique among all types of shapes.
+	 * @return The id, or 0 if the shape has never been added to a model
+	 * @since 2.1
+	 * @see ShapeStore
+	 */
+	public int getId () { return id; }
+
+	/**
+	 * Sets the unique id of this shape.
+	 * @param id The id assigned by the shape store
+	 */
+	void setId (int id) { this.id = id; }
 
 	/**
 	 * Returns the horizontal value of this shape's position.
@@ -43,6 +63,7 @@ public abstract class Shape implements Cloneable
 	 */
 	public void setX (int x)
 	{
+		checkMutable();
 		this.x = x;
 		setSize(getWidth(), getHeight());
 	}
@@ -60,6 +81,7 @@ public abstract class Shape implements Cloneable
 	 */
 	public void setY (int y)
 	{
+		checkMutable();
 		this.y = y;
 		setSize(getWidth(), getHeight());
 	}
@@ -72,6 +94,7 @@ public abstract class Shape implements Cloneable
 	 */
 	public void setPosition (Point p)
 	{
+		checkMutable();
 		x = p.x; y = p.y;
 		setSize(getWidth(), getHeight());
 	}
@@ -89,31 +112,65 @@ public abstract class Shape implements Cloneable
 	 * especially if your shape doesn't use a fill color.
 	 * @param color The new fill color of the shape
 	 */
-	public void setColor (Color color) { this.color = color; }
+	public void setColor (Color color)
+	{
+		checkMutable();
+		this.color = color;
+	}
 
 	/**
 	 * Returns the border/line width of this shape.
 	 * @return The <code>borderWidth</code> property of the shape
 	 */
-	public int getBorderWidth () { return borderWidth; }
+	public int getBorderWidth () { return getStyle().getBorderWidth(); }
 
 	/**
 	 * Sets the border/line width of this shape.
 	 * @param borderWidth The new border/line width of the shape
 	 */
-	public void setBorderWidth (int borderWidth) { this.borderWidth = borderWidth; }
+	public void setBorderWidth (int borderWidth)
+	{
+		checkMutable();
+		setStyle(getStyle().withBorderWidth(borderWidth));
+	}
 
 	/**
 	 * Returns the border color of this shape.
 	 * @return The <code>borderColor</code> property of the shape
 	 */
-	public Color getBorderColor () { return borderColor; }
+	public Color getBorderColor () { return getStyle().getBorderColor(); }
 
 	/**
 	 * Sets the border color of this shape.
 	 * @param borderColor The new border color of the shape
 	 */
-	public void setBorderColor (Color borderColor) { this.borderColor = borderColor; }
+	public void setBorderColor (Color borderColor)
+	{
+		checkMutable();
+		setStyle(getStyle().withBorderColor(borderColor));
+	}
+
+	/**
+	 * Returns the style of this shape, which combines its border color,
+	 * border/line width and dash pattern.
+	 * <p><b>Note:</b> Override this method in a derived class if you override
+	 * the getters of these properties.
+	 * @return The shared <code>Style</code> object
+	 * @since 2.1
+	 */
+	public Style getStyle () { return Style.get(style); }
+
+	/**
+	 * Sets the style of this shape, i.e., its border color and its border
+	 * width at once.
+	 * @param style The new style of the shape
+	 * @since 2.1
+	 */
+	public void setStyle (Style style)
+	{
+		checkMutable();
+		this.style = style.getIndex();
+	}
 
 	/**
 	 * Constructs a generic shape with a width and height of 0, a border/line width of
@@ -127,9 +184,8 @@ public abstract class Shape implements Cloneable
 		this.x = x;
 		this.y = y;
 		this.color = color;
+		style = Style.of(Color.BLACK, 0, null).getIndex();
 		setSize(0, 0);
-		borderColor = Color.BLACK;
-		borderWidth = 0;
 	}
 
 	public abstract void accept (Visitor visitor);
@@ -171,6 +227,31 @@ public abstract class Shape implements Cloneable
 	 */
 	public abstract void paint (Graphics2D g);
 
+	/**
+	 * Returns the geometric representation of this shape, so that renderers can
+	 * combine the outlines of several shapes that look the same and paint them
+	 * at once.
+	 * Painting the outline must be equivalent to <code>paint(Graphics2D)</code>:
+	 * it's filled with the fill color if <code>isFilled()</code> returns
+	 * <code>true</code>, and it's drawn with a <code>BasicStroke</code> of the
+	 * border width in the border color if the border width is greater than 0.
+	 * <p><b>Note:</b> Override this method in a derived class if its shape can be
+	 * painted like this. The returned object must not be modified.
+	 * @return The outline of the shape, or <code>null</code> if only
+	 * <code>paint(Graphics2D)</code> is able to paint it
+	 * @since 2.1
+	 * @see gfxeditor.render.BatchPainter
+	 */
+	public java.awt.Shape getOutline () { return null; }
+
+	/**
+	 * Checks if the outline of this shape is filled with its fill color when painted.
+	 * @return <code>true</code> if the shape is filled
+	 * @since 2.1
+	 * @see #getOutline()
+	 */
+	public boolean isFilled () { return false; }
+
 	/**
 	 * Checks if a point is contained in this shape.
 	 * <p><b>Note:</b> This method should delegate the task to <code>contains(Point)</code>
@@ -180,6 +261,24 @@ public abstract class Shape implements Cloneable
 	 */
 	public abstract boolean contains (Point p);
 
+	/**
+	 * Returns the bounding rectangle of this shape.
+	 * The rectangle always has a positive width and height, even if the shape
+	 * has been drawn "backwards", and it is enlarged by the border/line width,
+	 * so that it encloses every pixel painted by <code>paint(Graphics2D)</code>
+	 * and every point accepted by <code>contains(Point)</code>.
+	 * @return A new <code>Rectangle</code> object
+	 * @since 2.1
+	 */
+	public Rectangle getBounds ()
+	{
+		int x = getX(), y = getY(), w = getWidth(), h = getHeight();
+		if (w < 0) { x += w; w = -w; }
+		if (h < 0) { y += h; h = -h; }
+		int pad = getBorderWidth()/2 + 2;
+		return new Rectangle(x - pad, y - pad, w + 2*pad + 1, h + 2*pad + 1);
+	}
+
 	/**
 	 * Checks if the shape is not visible when <code>paint(Graphics2D)</code>
 	 * is called.
@@ -202,4 +301,83 @@ public abstract class Shape implements Cloneable
 	 */
 	@Override
 	public abstract Object clone ();
+
+	/**
+	 * Returns a frozen copy of this shape in its current state.
+	 * Unlike a clone, the copy is the same shape: it keeps the id and the
+	 * internal number. It can't be changed, so that it can be shared between
+	 * threads; a clone of it can be changed, though.
+	 * <p><b>Note:</b> The default implementation copies the fields of the shape,
+	 * but not the objects they refer to. You need to override
+	 * <code>freeze(Style)</code> if your shape changes these objects rather
+	 * than replacing them.
+	 * @return A copy that isn't affected by later changes of this shape
+	 * @since 2.1
+	 * @see Snapshot
+	 */
+	public Shape freeze ()
+	{
+		return freeze(getStyle());
+	}
+
+	/**
+	 * Returns a frozen copy of this shape with another style.
+	 * @param style The style of the copy
+	 * @return A copy that isn't affected by later changes of this shape
+	 * @see #freeze()
+	 * @since 2.1
+	 */
+	public Shape freeze (Style style)
+	{
+		Shape c = duplicate();
+		c.style = style.getIndex();
+		c.frozen = true;
+		return c;
+	}
+
+	/**
+	 * Returns a copy of this shape that can be changed without affecting it,
+	 * e.g., to compute the next states of the shape on another thread.
+	 * Unlike a clone, the copy keeps the id and the internal number, so no
+	 * new number is used up; unlike a frozen copy, it can be changed.
+	 * <p><b>Note:</b> The default implementation copies the fields of the shape,
+	 * but not the objects they refer to, just like <code>freeze(Style)</code>.
+	 * @return A copy that isn't affected by later changes of this shape
+	 * @see #freeze()
+	 * @since 2.1
+	 */
+	public Shape copy ()
+	{
+		Shape c = duplicate();
+		c.frozen = false;
+		return c;
+	}
+
+	private Shape duplicate ()
+	{
+		try {
+			return (Shape)super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError(e.toString());
+		}
+	}
+
+	/**
+	 * Checks if this shape is a frozen copy.
+	 * @return <code>true</code> if this shape can't be changed
+	 * @see #freeze()
+	 * @since 2.1
+	 */
+	public boolean isFrozen () { return frozen; }
+
+	/**
+	 * Makes sure that this shape may be changed. Derived classes call this at
+	 * the beginning of every method that changes the shape.
+	 * @throws UnsupportedOperationException If this is a frozen copy
+	 * @since 2.1
+	 */
+	protected final void checkMutable ()
+	{
+		if (frozen) throw new UnsupportedOperationException(this + " is frozen");
+	}
 }
@@ -0,0 +1,399 @@
+package gfxeditor;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Stores the shapes of a model in z-order, i.e., from the bottom-most to
+ * the top-most shape.
+ *
+ * <p>The shapes are kept in a randomized balanced tree (a treap) that is
+ * ordered by position and knows the size of each subtree, so that a shape can
+ * be inserted, removed or looked up at any position in logarithmic time.
+ * <br>Every shape is assigned a unique id when it's added for the first time.
+ * The store finds a shape by its id in constant time and determines the
+ * position of a shape in logarithmic time.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Shape#getId()
+ */
+public class ShapeStore extends AbstractList<Shape>
+{
+	private Node root;
+	private Map<Integer, Node> nodes;
+	private Random random;
+	private int lastId;
+
+	private static final class Node
+	{
+		Shape shape;
+		Node left, right, parent;
+		int size;
+		final int priority;
+
+		Node (Shape shape, int priority)
+		{
+			this.shape = shape;
+			this.priority = priority;
+			size = 1;
+		}
+
+		void update ()
+		{
+			size = 1 + size(left) + size(right);
+		}
+	}
+
+	/**
+	 * Constructs an empty shape store.
+	 */
+	public ShapeStore ()
+	{
+		nodes = new HashMap<Integer, Node>();
+		random = new Random();
+	}
+
+	/**
+	 * Returns the number of shapes in this store.
+	 * @return The number of shapes
+	 */
+	@Override
+	public int size () { return size(root); }
+
+	/**
+	 * Returns the shape at the given position.
+	 * @param index The position of the shape, 0 being the bottom-most one
+	 * @return A <code>Shape</code> object
+	 */
+	@Override
+	public Shape get (int index)
+	{
+		return nodeAt(index).shape;
+	}
+
+	/**
+	 * Returns the shape with the given id.
+	 * @param id The id of the shape
+	 * @return A <code>Shape</code> object, or <code>null</code> if there is no
+	 * shape with this id
+	 */
+	public Shape getById (int id)
+	{
+		Node n = nodes.get(id);
+		return n == null ? null : n.shape;
+	}
+
+	/**
+	 * Returns the position of the shape with the given id.
+	 * @param id The id of the shape
+	 * @return The position of the shape, or -1 if there is no shape with this id
+	 */
+	public int positionOf (int id)
+	{
+		Node n = nodes.get(id);
+		return n == null ? -1 : rank(n);
+	}
+
+	/**
+	 * Returns the position of a shape.
+	 * @param o The shape to look for
+	 * @return The position of the shape, or -1 if it isn't stored here
+	 */
+	@Override
+	public int indexOf (Object o)
+	{
+		Node n = find(o);
+		return n == null ? -1 : rank(n);
+	}
+
+	@Override
+	public int lastIndexOf (Object o)
+	{
+		return indexOf(o);
+	}
+
+	@Override
+	public boolean contains (Object o)
+	{
+		return find(o) != null;
+	}
+
+	/**
+	 * Inserts a shape at the given position.
+	 * The shape is assigned a new id if it doesn't have one yet.
+	 * @param index The position of the new shape
+	 * @param s The <code>Shape</code> object to be inserted
+	 * @throws IllegalArgumentException if the shape is already stored
+	 */
+	@Override
+	public void add (int index, Shape s)
+	{
+		if (index < 0 || index > size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		if (s.getId() == 0)
+			s.setId(++lastId);
+		if (nodes.containsKey(s.getId()))
+			throw new IllegalArgumentException(s + " is already stored");
+		Node n = new Node(s, random.nextInt());
+		nodes.put(s.getId(), n);
+		Node[] parts = new Node[2];
+		split(root, index, parts);
+		setRoot(merge(merge(parts[0], n), parts[1]));
+		modCount++;
+	}
+
+	/**
+	 * Replaces the shape at the given position.
+	 * @param index The position of the shape
+	 * @param s The <code>Shape</code> object that takes its place
+	 * @return The replaced <code>Shape</code> object
+	 */
+	@Override
+	public Shape set (int index, Shape s)
+	{
+		Node n = nodeAt(index);
+		Shape old = n.shape;
+		if (s.getId() != old.getId()) {
+			if (s.getId() == 0)
+				s.setId(++lastId);
+			if (nodes.containsKey(s.getId()))
+				throw new IllegalArgumentException(s + " is already stored");
+			nodes.remove(old.getId());
+			nodes.put(s.getId(), n);
+		}
+		n.shape = s;
+		return old;
+	}
+
+	/**
+	 * Removes the shape at the given position.
+	 * @param index The position of the shape
+	 * @return The removed <code>Shape</code> object
+	 */
+	@Override
+	public Shape remove (int index)
+	{
+		Node n = nodeAt(index);
+		unlink(n);
+		return n.shape;
+	}
+
+	/**
+	 * Removes a shape from this store.
+	 * @param o The shape to be removed
+	 * @return <code>true</code> if the shape was stored here
+	 */
+	@Override
+	public boolean remove (Object o)
+	{
+		Node n = find(o);
+		if (n == null) return false;
+		unlink(n);
+		return true;
+	}
+
+	/**
+	 * Removes the shape with the given id.
+	 * @param id The id of the shape
+	 * @return The removed <code>Shape</code> object, or <code>null</code> if there
+	 * is no shape with this id
+	 */
+	public Shape removeById (int id)
+	{
+		Node n = nodes.get(id);
+		if (n == null) return null;
+		unlink(n);
+		return n.shape;
+	}
+
+	@Override
+	public void clear ()
+	{
+		root = null;
+		nodes.clear();
+		modCount++;
+	}
+
+	/**
+	 * Returns an iterator over the shapes, starting at the bottom-most one.
+	 * @return An <code>Iterator</code> that also supports <code>remove()</code>
+	 */
+	@Override
+	public Iterator<Shape> iterator ()
+	{
+		return new Iterator<Shape>() {
+			private Node next = first(root), last;
+			private int expectedModCount = modCount;
+
+			public boolean hasNext () { return next != null; }
+
+			public Shape next ()
+			{
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (next == null)
+					throw new NoSuchElementException();
+				last = next;
+				next = successor(next);
+				return last.shape;
+			}
+
+			public void remove ()
+			{
+				if (last == null)
+					throw new IllegalStateException();
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				unlink(last);
+				last = null;
+				expectedModCount = modCount;
+			}
+		};
+	}
+
+	/**
+	 * Sorts the given shapes by their position in this store.
+	 * The position of each shape is only determined once.
+	 * @param shapes A list of shapes that are stored here
+	 */
+	public void sort (List<Shape> shapes)
+	{
+		int n = shapes.size();
+		if (n < 2) return;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = (long)positionOf(shapes.get(i).getId()) << 32 | i;
+		Arrays.sort(keys);
+		Shape[] sorted = new Shape[n];
+		for (int i = 0; i < n; i++)
+			sorted[i] = shapes.get((int)keys[i]);
+		for (int i = 0; i < n; i++)
+			shapes.set(i, sorted[i]);
+	}
+
+	private Node find (Object o)
+	{
+		if (!(o instanceof Shape)) return null;
+		Node n = nodes.get(((Shape)o).getId());
+		return n != null && n.shape == o ? n : null;
+	}
+
+	private Node nodeAt (int index)
+	{
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		Node n = root;
+		while (true) {
+			int l = size(n.left);
+			if (index < l)
+				n = n.left;
+			else if (index > l) {
+				index -= l + 1;
+				n = n.right;
+			} else
+				return n;
+		}
+	}
+
+	private static int rank (Node n)
+	{
+		int r = size(n.left);
+		for (; n.parent != null; n = n.parent) {
+			if (n == n.parent.right)
+				r += size(n.parent.left) + 1;
+		}
+		return r;
+	}
+
+	private void unlink (Node n)
+	{
+		Node parent = n.parent, child = merge(n.left, n.right);
+		if (child != null) child.parent = parent;
+		if (parent == null)
+			root = child;
+		else if (parent.left == n)
+			parent.left = child;
+		else
+			parent.right = child;
+		for (Node p = parent; p != null; p = p.parent)
+			p.update();
+		n.left = n.right = n.parent = null;
+		nodes.remove(n.shape.getId());
+		modCount++;
+	}
+
+	private void setRoot (Node n)
+	{
+		root = n;
+		if (n != null) n.parent = null;
+	}
+
+	/**
+	 * Splits a tree into the first <code>k</code> nodes and the remaining ones.
+	 */
+	private static void split (Node t, int k, Node[] parts)
+	{
+		if (t == null) {
+			parts[0] = parts[1] = null;
+			return;
+		}
+		if (size(t.left) < k) {
+			split(t.right, k - size(t.left) - 1, parts);
+			t.right = parts[0];
+			if (t.right != null) t.right.parent = t;
+			t.update();
+			parts[0] = t;
+		} else {
+			split(t.left, k, parts);
+			t.left = parts[1];
+			if (t.left != null) t.left.parent = t;
+			t.update();
+			parts[1] = t;
+		}
+	}
+
+	private static Node merge (Node a, Node b)
+	{
+		if (a == null) return b;
+		if (b == null) return a;
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			a.right.parent = a;
+			a.update();
+			return a;
+		} else {
+			b.left = merge(a, b.left);
+			b.left.parent = b;
+			b.update();
+			return b;
+		}
+	}
+
+	private static Node first (Node n)
+	{
+		if (n == null) return null;
+		while (n.left != null) n = n.left;
+		return n;
+	}
+
+	private static Node successor (Node n)
+	{
+		if (n.right != null) return first(n.right);
+		while (n.parent != null && n == n.parent.right)
+			n = n.parent;
+		return n.parent;
+	}
+
+	private static int size (Node n)
+	{
+		return n == null ? 0 : n.size;
+	}
+}
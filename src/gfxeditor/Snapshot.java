@@ -0,0 +1,273 @@
+package gfxeditor;
+
+import java.awt.Color;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable version of the shapes of a model, in z-order.
+ *
+ * <p>A snapshot contains frozen copies of the shapes, which keep their ids
+ * and can't be changed, so it can be read by any thread without locks while
+ * the model is edited.
+ * <br>The copies are kept in a persistent treap ordered by position: a change
+ * only copies the path from the root to the changed shape and shares all
+ * other nodes with the previous snapshot, so taking a new snapshot after an
+ * edit costs logarithmic time instead of a copy of the whole list.
+ * <br>Snapshots are created by the model; every change makes a new one with
+ * a higher version number.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Model#getSnapshot()
+ * @see Shape#freeze()
+ */
+public final class Snapshot extends AbstractList<Shape>
+{
+	private final Node root;
+	private final long version;
+
+	private static final class Node
+	{
+		final Shape shape;
+		final Node left, right;
+		final int size, priority;
+
+		Node (Shape shape, int priority, Node left, Node right)
+		{
+			this.shape = shape;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			size = 1 + size(left) + size(right);
+		}
+	}
+
+	/**
+	 * Constructs an empty snapshot.
+	 */
+	Snapshot ()
+	{
+		this(null, 0);
+	}
+
+	private Snapshot (Node root, long version)
+	{
+		this.root = root;
+		this.version = version;
+	}
+
+	/**
+	 * Returns the version of this snapshot.
+	 * @return A number that is greater than the version of any earlier
+	 * snapshot of the same model
+	 */
+	public long getVersion () { return version; }
+
+	/**
+	 * Returns the number of shapes in this snapshot.
+	 * @return The number of shapes
+	 */
+	@Override
+	public int size () { return size(root); }
+
+	/**
+	 * Returns the shape at the given position.
+	 * @param index The position of the shape, 0 being the bottom-most one
+	 * @return A frozen copy of the shape
+	 */
+	@Override
+	public Shape get (int index)
+	{
+		checkIndex(index, size());
+		Node n = root;
+		while (true) {
+			int l = size(n.left);
+			if (index < l)
+				n = n.left;
+			else if (index > l) {
+				index -= l + 1;
+				n = n.right;
+			} else
+				return n.shape;
+		}
+	}
+
+	/**
+	 * Returns an iterator over the shapes, starting at the bottom-most one.
+	 * @return An <code>Iterator</code> that doesn't support <code>remove()</code>
+	 */
+	@Override
+	public Iterator<Shape> iterator ()
+	{
+		return new Iterator<Shape>() {
+			private final Deque<Node> path = new ArrayDeque<Node>();
+			{ descend(root); }
+
+			public boolean hasNext () { return !path.isEmpty(); }
+
+			public Shape next ()
+			{
+				if (path.isEmpty())
+					throw new NoSuchElementException();
+				Node n = path.pop();
+				descend(n.right);
+				return n.shape;
+			}
+
+			public void remove ()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			private void descend (Node n)
+			{
+				for (; n != null; n = n.left)
+					path.push(n);
+			}
+		};
+	}
+
+	/**
+	 * Returns a snapshot with a frozen copy of a shape inserted at the given position.
+	 * The shape must have an id already.
+	 */
+	Snapshot insert (int index, Shape s)
+	{
+		checkIndex(index, size() + 1);
+		Node[] parts = new Node[2];
+		split(root, index, parts);
+		Node n = new Node(s.freeze(), priority(s.getId()), null, null);
+		return new Snapshot(merge(merge(parts[0], n), parts[1]), version + 1);
+	}
+
+	/**
+	 * Returns a snapshot with the shape at the given position replaced by
+	 * a frozen copy of a shape.
+	 */
+	Snapshot replace (int index, Shape s)
+	{
+		checkIndex(index, size());
+		return new Snapshot(replace(root, index, s.freeze()), version + 1);
+	}
+
+	/**
+	 * Returns a snapshot without the shape at the given position.
+	 */
+	Snapshot delete (int index)
+	{
+		checkIndex(index, size());
+		return new Snapshot(delete(root, index), version + 1);
+	}
+
+	/**
+	 * Returns a snapshot with the same structure, in which the shapes that
+	 * have changed since they were frozen are replaced by new frozen copies of
+	 * the shapes of a store. Subtrees without changes are shared; if nothing
+	 * has changed, this snapshot is returned.
+	 * This takes linear time for the comparison, but no rebalancing.
+	 */
+	Snapshot refreeze (ShapeStore store)
+	{
+		Node r = refreeze(root, store);
+		return r == root ? this : new Snapshot(r, version + 1);
+	}
+
+	private static Node replace (Node t, int index, Shape s)
+	{
+		int l = size(t.left);
+		if (index < l)
+			return new Node(t.shape, t.priority, replace(t.left, index, s), t.right);
+		if (index > l)
+			return new Node(t.shape, t.priority, t.left, replace(t.right, index - l - 1, s));
+		return new Node(s, t.priority, t.left, t.right);
+	}
+
+	private static Node delete (Node t, int index)
+	{
+		int l = size(t.left);
+		if (index < l)
+			return new Node(t.shape, t.priority, delete(t.left, index), t.right);
+		if (index > l)
+			return new Node(t.shape, t.priority, t.left, delete(t.right, index - l - 1));
+		return merge(t.left, t.right);
+	}
+
+	private static Node refreeze (Node t, ShapeStore store)
+	{
+		if (t == null) return null;
+		Node l = refreeze(t.left, store), r = refreeze(t.right, store);
+		Shape s = store.getById(t.shape.getId());
+		s = s == null || !changed(s, t.shape) ? t.shape : s.freeze();
+		return s == t.shape && l == t.left && r == t.right ? t : new Node(s, t.priority, l, r);
+	}
+
+	/**
+	 * Checks if a shape differs from its frozen copy. Since shapes replace
+	 * their geometry objects when they change, comparing the outlines detects
+	 * all changes of the geometry.
+	 */
+	private static boolean changed (Shape s, Shape frozen)
+	{
+		Color c = s.getColor();
+		return s.getX() != frozen.getX() || s.getY() != frozen.getY() ||
+		       s.getWidth() != frozen.getWidth() || s.getHeight() != frozen.getHeight() ||
+		       s.getStyle() != frozen.getStyle() || s.isFilled() != frozen.isFilled() ||
+		       s.getOutline() != frozen.getOutline() ||
+		       (c == null ? frozen.getColor() != null : !c.equals(frozen.getColor()));
+	}
+
+	/**
+	 * Splits a tree into the first <code>k</code> nodes and the remaining ones,
+	 * copying the nodes along the split path.
+	 */
+	private static void split (Node t, int k, Node[] parts)
+	{
+		if (t == null) {
+			parts[0] = parts[1] = null;
+			return;
+		}
+		if (size(t.left) < k) {
+			split(t.right, k - size(t.left) - 1, parts);
+			parts[0] = new Node(t.shape, t.priority, t.left, parts[0]);
+		} else {
+			split(t.left, k, parts);
+			parts[1] = new Node(t.shape, t.priority, parts[1], t.right);
+		}
+	}
+
+	private static Node merge (Node a, Node b)
+	{
+		if (a == null) return b;
+		if (b == null) return a;
+		if (a.priority > b.priority)
+			return new Node(a.shape, a.priority, a.left, merge(a.right, b));
+		return new Node(b.shape, b.priority, merge(a, b.left), b.right);
+	}
+
+	/**
+	 * Derives the priority of a node from the id of its shape, so that the
+	 * tree is balanced without a shared random number generator.
+	 */
+	private static int priority (int id)
+	{
+		int h = id * 0x9E3779B9;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		return h ^ h >>> 13;
+	}
+
+	private void checkIndex (int index, int bound)
+	{
+		if (index < 0 || index >= bound)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+	}
+
+	private static int size (Node n)
+	{
+		return n == null ? 0 : n.size;
+	}
+}
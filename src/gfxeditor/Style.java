@@ -0,0 +1,177 @@
+package gfxeditor;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Describes how the border of a shape is painted: its color, width and dash
+ * pattern. The fill color is a property of each shape.
+ *
+ * <p>Styles are immutable and interned, i.e., there is only one
+ * <code>Style</code> object for each combination of properties, which is shared
+ * by all shapes whose borders look the same. Shapes only store the index of
+ * their style, and two shapes have the same style if and only if they refer to
+ * the same index, so renderers can use it as a key.
+ * <br>Each style creates its <code>BasicStroke</code> once.
+ * <br>Styles are never discarded, but there are only few of them, since fill
+ * colors, which are often random or animated, aren't part of a style.
+ * Looking up an existing style doesn't lock.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Shape#getStyle()
+ */
+public final class Style
+{
+	private static final ConcurrentMap<Style, Style> interned =
+		new ConcurrentHashMap<Style, Style>();
+	private static volatile Style[] styles = new Style[16];
+	private static int count;
+
+	private final Color borderColor;
+	private final int borderWidth;
+	private final float[] dash;
+	private final int index;
+	private final BasicStroke stroke;
+
+	private Style (Color borderColor, int borderWidth, float[] dash, int index)
+	{
+		this.borderColor = borderColor;
+		this.borderWidth = borderWidth;
+		this.dash = dash;
+		this.index = index;
+		if (index < 0)
+			stroke = null; // only used for looking up a style
+		else if (dash == null)
+			stroke = new BasicStroke(borderWidth);
+		else
+			stroke = new BasicStroke(borderWidth, BasicStroke.CAP_BUTT,
+			                         BasicStroke.JOIN_MITER, 10F, dash, 0F);
+	}
+
+	/**
+	 * Returns the style with the given properties, creating it if it doesn't exist yet.
+	 * @param borderColor The border color, or <code>null</code>
+	 * @param borderWidth The border/line width
+	 * @param dash The dash pattern of the border, or <code>null</code> for a solid line
+	 * @return The shared <code>Style</code> object
+	 */
+	public static Style of (Color borderColor, int borderWidth, float[] dash)
+	{
+		Style s = interned.get(new Style(borderColor, borderWidth, dash, -1));
+		return s != null ? s : create(borderColor, borderWidth, dash);
+	}
+
+	private static synchronized Style create (Color borderColor, int borderWidth,
+	                                          float[] dash)
+	{
+		Style key = new Style(borderColor, borderWidth, dash, -1);
+		Style s = interned.get(key);
+		if (s == null) {
+			s = new Style(borderColor, borderWidth, dash == null ? null : dash.clone(), count);
+			Style[] table = styles;
+			if (count == table.length)
+				table = Arrays.copyOf(table, count * 2);
+			table[count++] = s;
+			styles = table; // published before the style can be found
+			interned.put(s, s);
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the style with the given index.
+	 * @param index The index of the style
+	 * @return The <code>Style</code> object
+	 * @see #getIndex()
+	 */
+	public static Style get (int index)
+	{
+		return styles[index];
+	}
+
+	/**
+	 * Returns the index of this style, which identifies it.
+	 * @return A number between 0 and the number of styles
+	 */
+	public int getIndex () { return index; }
+
+	/**
+	 * Returns the border color of this style.
+	 * @return The border color, or <code>null</code>
+	 */
+	public Color getBorderColor () { return borderColor; }
+
+	/**
+	 * Returns the border/line width of this style.
+	 * @return The border width, in pixels
+	 */
+	public int getBorderWidth () { return borderWidth; }
+
+	/**
+	 * Returns the dash pattern of the border.
+	 * @return A copy of the dash pattern, or <code>null</code> for a solid line
+	 */
+	public float[] getDash () { return dash == null ? null : dash.clone(); }
+
+	/**
+	 * Returns the stroke used for painting the border.
+	 * @return A <code>BasicStroke</code> with the border width and dash pattern
+	 */
+	public BasicStroke getStroke () { return stroke; }
+
+	/**
+	 * Returns a style like this one with a different border color.
+	 * @param c The border color
+	 * @return The shared <code>Style</code> object
+	 */
+	public Style withBorderColor (Color c)
+	{
+		return same(c, borderColor) ? this : of(c, borderWidth, dash);
+	}
+
+	/**
+	 * Returns a style like this one with a different border width.
+	 * @param width The border/line width
+	 * @return The shared <code>Style</code> object
+	 */
+	public Style withBorderWidth (int width)
+	{
+		return width == borderWidth ? this : of(borderColor, width, dash);
+	}
+
+	/**
+	 * Returns a style like this one with a different dash pattern.
+	 * @param dash The dash pattern, or <code>null</code> for a solid line
+	 * @return The shared <code>Style</code> object
+	 */
+	public Style withDash (float[] dash)
+	{
+		return Arrays.equals(dash, this.dash) ? this : of(borderColor, borderWidth, dash);
+	}
+
+	@Override
+	public boolean equals (Object o)
+	{
+		if (!(o instanceof Style)) return false;
+		Style s = (Style)o;
+		return same(borderColor, s.borderColor) &&
+		       borderWidth == s.borderWidth && Arrays.equals(dash, s.dash);
+	}
+
+	@Override
+	public int hashCode ()
+	{
+		int h = borderColor == null ? 0 : borderColor.hashCode();
+		h = 31 * h + borderWidth;
+		return 31 * h + Arrays.hashCode(dash);
+	}
+
+	private static boolean same (Color a, Color b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+}
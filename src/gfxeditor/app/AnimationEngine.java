@@ -0,0 +1,262 @@
+package gfxeditor.app;
+
+import gfxeditor.Model;
+import gfxeditor.Shape;
+import gfxeditor.visitors.BulkTransform;
+import gfxeditor.visitors.Visitor;
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.swing.Timer;
+
+/**
+ * Animates the shapes of a model with a visitor, at a speed that doesn't
+ * depend on how often frames can be painted.
+ *
+ * <p>The visitor is applied on a separate thread, to copies of the shapes,
+ * at a fixed rate of <code>STEPS_PER_SECOND</code>. If the thread falls
+ * behind, it catches up by taking several steps at once, so that no step is
+ * lost. After each step, the positions, sizes and colors of the copies are
+ * published as an immutable state, and the model looks for collisions
+ * among the copies, so that no collision is missed when frames are dropped.
+ * <br>On the event dispatch thread, a timer applies the latest state to the
+ * shapes of the model, interpolating the positions and sizes between the
+ * last two states, and repaints the shapes that have changed, so that the
+ * cost of a frame depends on the number of moving shapes. The timer coalesces its events, so
+ * frames are dropped when painting can't keep up.
+ * <br>Only the changes since the last frame are applied, so a shape that is
+ * moved, resized or recolored meanwhile keeps the user's changes and goes on
+ * moving from there; its color isn't animated anymore. Shapes that are
+ * removed from the model are left alone.
+ * <br>The copies keep the ids and numbers of the shapes, so an animation
+ * doesn't use up any numbers.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Visitor#visitAll(BulkTransform)
+ */
+final class AnimationEngine
+{
+	/** The number of times per second the visitor is applied. */
+	static final int STEPS_PER_SECOND = 30;
+
+	private static final long STEP = TimeUnit.SECONDS.toNanos(1) / STEPS_PER_SECOND;
+	private static final int FRAME_DELAY = 15; // ms
+
+	private final Model model;
+	private final Canvas canvas;
+	private final Timer frames;
+	private Shape[] targets;
+	// copies of the targets that have been removed from the model
+	private Set<Shape> removed;
+	private Shape[] sim;
+	// what has been applied to the targets with the last frame
+	private int[] lastX, lastY, lastW, lastH;
+	private Color[] lastColor;
+	private Thread simulation;
+	private volatile State latest;
+	private State rendered;
+
+	/**
+	 * The positions, sizes and fill colors of all shapes after a step,
+	 * together with those before it.
+	 */
+	private static final class State
+	{
+		final long time;
+		final int[] x, y, w, h;
+		final Color[] color;
+		final int[] px, py, pw, ph;
+
+		State (long time, Shape[] shapes, State previous)
+		{
+			this.time = time;
+			int n = shapes.length;
+			x = new int[n];
+			y = new int[n];
+			w = new int[n];
+			h = new int[n];
+			color = new Color[n];
+			for (int i = 0; i < n; i++) {
+				x[i] = shapes[i].getX();
+				y[i] = shapes[i].getY();
+				w[i] = shapes[i].getWidth();
+				h[i] = shapes[i].getHeight();
+				color[i] = shapes[i].getColor();
+			}
+			State p = previous != null ? previous : this;
+			px = p.x;
+			py = p.y;
+			pw = p.w;
+			ph = p.h;
+		}
+	}
+
+	/**
+	 * Constructs an engine that isn't running.
+	 * @param model The model whose shapes are animated
+	 * @param canvas The canvas that is kept busy while the animation runs
+	 */
+	AnimationEngine (Model model, Canvas canvas)
+	{
+		this.model = model;
+		this.canvas = canvas;
+		frames = new Timer(FRAME_DELAY, new ActionListener() {
+			public void actionPerformed (ActionEvent e) { render(); }
+		});
+		frames.setCoalesce(true);
+	}
+
+	/**
+	 * Checks if an animation is running.
+	 * @return <code>true</code> between <code>start(Visitor)</code> and
+	 * <code>stop()</code>
+	 */
+	boolean isRunning () { return simulation != null; }
+
+	/**
+	 * Starts animating all shapes of the model, stopping the current animation.
+	 * Shapes added to the model meanwhile aren't animated.
+	 * This method must be called on the event dispatch thread.
+	 * @param visitor The visitor applied in every step; it's only used by the
+	 * simulation thread from now on
+	 */
+	void start (final Visitor visitor)
+	{
+		stop();
+		List<Shape> shapes = model.getShapes();
+		targets = shapes.toArray(new Shape[shapes.size()]);
+		final Shape[] sim = new Shape[targets.length];
+		for (int i = 0; i < targets.length; i++)
+			sim[i] = targets[i].copy();
+		final Set<Shape> removed = Collections.newSetFromMap(new ConcurrentHashMap<Shape, Boolean>());
+		this.sim = sim;
+		this.removed = removed;
+		final State initial = new State(System.nanoTime(), sim, null);
+		latest = rendered = initial;
+		lastX = initial.x.clone();
+		lastY = initial.y.clone();
+		lastW = initial.w.clone();
+		lastH = initial.h.clone();
+		lastColor = initial.color.clone();
+		simulation = new Thread(new Runnable() {
+			public void run () { simulate(visitor, sim, removed, initial.time); }
+		}, "Animation");
+		simulation.setDaemon(true);
+		simulation.start();
+		frames.start();
+	}
+
+	/**
+	 * Stops the animation, and applies the state of the last step to the shapes
+	 * of the model.
+	 * This method must be called on the event dispatch thread.
+	 */
+	void stop ()
+	{
+		if (simulation == null) return;
+		frames.stop();
+		simulation.interrupt();
+		try {
+			simulation.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		simulation = null;
+		apply(latest, 1);
+		rendered = null;
+	}
+
+	private void simulate (Visitor visitor, Shape[] sim, Set<Shape> removed, long start)
+	{
+		BulkTransform bulk = new BulkTransform(Arrays.asList(sim));
+		List<Shape> present = Arrays.asList(sim);
+		int gone = 0;
+		long next = start + STEP;
+		while (!Thread.currentThread().isInterrupted()) {
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				} catch (InterruptedException ex) {
+					return;
+				}
+			}
+			visitor.visitAll(bulk);
+			bulk.sync();
+			latest = new State(next, sim, latest);
+			if (removed.size() != gone) {
+				gone = removed.size();
+				present = new ArrayList<Shape>(Arrays.asList(sim));
+				present.removeAll(removed);
+			}
+			model.detectCollisions(present);
+			next += STEP;
+		}
+	}
+
+	// called by the timer; shows the state one step ago, between the last two steps
+	private void render ()
+	{
+		State s = latest;
+		double alpha = Math.min(1, Math.max(0, (double)(System.nanoTime() - s.time) / STEP));
+		if (s == rendered && alpha == 1) return;
+		rendered = s;
+		apply(s, alpha);
+		canvas.busy();
+	}
+
+	private void apply (State s, double alpha)
+	{
+		List<Shape> changed = new ArrayList<Shape>();
+		for (int i = 0; i < targets.length; i++) {
+			Shape t = targets[i];
+			if (t == null) continue;
+			if (model.getShape(t.getId()) != t) {
+				targets[i] = null; // deleted
+				removed.add(sim[i]);
+				continue;
+			}
+			int x = s.px[i] + (int)Math.round((s.x[i] - s.px[i]) * alpha),
+			    y = s.py[i] + (int)Math.round((s.y[i] - s.py[i]) * alpha),
+			    w = s.pw[i] + (int)Math.round((s.w[i] - s.pw[i]) * alpha),
+			    h = s.ph[i] + (int)Math.round((s.h[i] - s.ph[i]) * alpha);
+			Color c = s.color[i];
+			boolean change = false;
+			if (c != null && !c.equals(lastColor[i])) {
+				if (same(t.getColor(), lastColor[i])) { // not recolored
+					t.setColor(c);
+					change = true;
+				}
+				lastColor[i] = c;
+			}
+			if (x != lastX[i] || y != lastY[i]) {
+				t.setPosition(new Point(t.getX() + x - lastX[i], t.getY() + y - lastY[i]));
+				change = true;
+			}
+			if (w != lastW[i] || h != lastH[i]) {
+				t.setSize(t.getWidth() + w - lastW[i], t.getHeight() + h - lastH[i]);
+				change = true;
+			}
+			if (change) changed.add(t);
+			lastX[i] = x;
+			lastY[i] = y;
+			lastW[i] = w;
+			lastH[i] = h;
+		}
+		if (!changed.isEmpty()) model.refresh(changed);
+	}
+
+	private static boolean same (Color a, Color b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -4,13 +4,37 @@ import gfxeditor.Model;
 import gfxeditor.Shape;
 import gfxeditor.event.GraphicsEvent;
 import gfxeditor.event.GraphicsListener;
+import gfxeditor.render.BatchPainter;
+import gfxeditor.render.LevelOfDetail;
+import gfxeditor.render.ParallelRenderer;
+import gfxeditor.render.TileCache;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 // Stage 1
 /**
@@ -26,6 +50,54 @@ import javax.swing.JPanel;
 public final class Canvas extends JPanel implements GraphicsListener
 {
 	private Model model;
+	private java.awt.Shape rubberBand;
+	private boolean numbersVisible;
+	private ParallelRenderer renderer;
+	private TileCache tiles;
+	private LevelOfDetail detail;
+	private Timer idleTimer;
+
+	// the viewport: a point p of the drawing is displayed at p * zoom - origin
+	private double zoom;
+	private int originX, originY;
+
+	// shapes that are being dragged, and an image of all other shapes
+	private List<Shape> active;
+	private Set<Integer> activeIds;
+	private BufferedImage scene;
+
+	/**
+	 * The smallest zoom level.
+	 */
+	static final double MIN_ZOOM = 1/16.0;
+	/**
+	 * The largest zoom level.
+	 */
+	static final double MAX_ZOOM = 16;
+
+	// how long the canvas has to be idle until anti-aliasing is turned on again, in ms
+	private static final int IDLE_DELAY = 250;
+
+	// memory budget of the tile cache
+	private static final long TILE_CACHE_BYTES = 64L << 20;
+
+	// how far a shape number may extend beyond the bounds of a small shape
+	private static final int LABEL_MARGIN = 40;
+
+	// cached glyphs of the digits 0-9, used for drawing the shape numbers
+	private GlyphVector[] digits;
+	private float[] digitWidths;
+	private float digitHeight;
+	private Font digitFont;
+	private FontRenderContext digitContext;
+	private final int[] digitBuffer = new int[10];
+
+	private static final BasicStroke SELECTION_STROKE =
+		new BasicStroke(1F, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+		                5F, new float[] {5F}, 0F);
+	private static final BasicStroke RUBBER_BAND_STROKE =
+		new BasicStroke(1F, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+		                5F, new float[] {3F}, 0F);
 
 	/**
 	 * The standard cursor for the select tool.
@@ -44,32 +116,382 @@ public final class Canvas extends JPanel implements GraphicsListener
 	/**
 	 * Constructs a canvas with white background.
 	 * Also registers the controller as <code>MouseListener</code>,
-	 * <code>MouseMotionListener</code> and <code>KeyListener</code>.
+	 * <code>MouseMotionListener</code>, <code>MouseWheelListener</code> and
+	 * <code>KeyListener</code>.
 	 * @param ctrl The <code>Controller</code> managing this canvas
 	 */
 	public Canvas (Controller ctrl)
 	{
 		model = ctrl.getModel();
+		renderer = new ParallelRenderer();
+		tiles = new TileCache(model, renderer, TILE_CACHE_BYTES);
+		zoom = 1;
+		detail = LevelOfDetail.DEFAULT;
+		tiles.setDetail(detail);
+		idleTimer = new Timer(IDLE_DELAY, new ActionListener() {
+			public void actionPerformed (ActionEvent e)
+			{
+				setDetail(detail.withAntialiasing(true));
+				repaint();
+			}
+		});
+		idleTimer.setRepeats(false);
 		setBackground(Color.WHITE);
 		setMinimumSize(new Dimension(152, 200));
 		addMouseListener(ctrl);
 		addMouseMotionListener(ctrl);
+		addMouseWheelListener(ctrl);
 		addKeyListener(ctrl);
 	}
 
 	/**
-	 * Paints all of the model's shapes with anti-aliasing.
+	 * Returns the transformation from model coordinates to the coordinates of
+	 * this canvas.
+	 * @return A new <code>AffineTransform</code> object
+	 */
+	AffineTransform getViewport ()
+	{
+		AffineTransform t = AffineTransform.getTranslateInstance(-originX, -originY);
+		t.scale(zoom, zoom);
+		return t;
+	}
+
+	/**
+	 * Returns the zoom level of the viewport.
+	 * @return The scale factor, 1 meaning 100%
+	 */
+	double getZoom () { return zoom; }
+
+	/**
+	 * Converts a point of this canvas, e.g., the position of the mouse, to
+	 * model coordinates.
+	 * @param p A point in the coordinates of this canvas
+	 * @return A new <code>Point</code> object
+	 */
+	Point toModel (Point p)
+	{
+		return new Point((int)Math.floor((p.x + originX) / zoom),
+		                 (int)Math.floor((p.y + originY) / zoom));
+	}
+
+	/**
+	 * Returns the area of the drawing that is displayed in an area of this canvas.
+	 */
+	private Rectangle2D toModel (Rectangle r)
+	{
+		return new Rectangle2D.Double((r.x + originX) / zoom, (r.y + originY) / zoom,
+		                              r.width / zoom, r.height / zoom);
+	}
+
+	/**
+	 * Returns the area of this canvas that displays an area of the drawing.
+	 */
+	private Rectangle toView (Rectangle2D r)
+	{
+		int x = (int)Math.floor(r.getMinX() * zoom), y = (int)Math.floor(r.getMinY() * zoom);
+		return new Rectangle(x - originX, y - originY,
+		                     (int)Math.ceil(r.getMaxX() * zoom) - x,
+		                     (int)Math.ceil(r.getMaxY() * zoom) - y);
+	}
+
+	/**
+	 * Zooms in or out, keeping the given point of the canvas in place.
+	 * The zoom level is kept between <code>MIN_ZOOM</code> and <code>MAX_ZOOM</code>.
+	 * @param factor The factor the zoom level is multiplied with
+	 * @param center The point of the canvas that stays in place
+	 */
+	void zoom (double factor, Point center)
+	{
+		setZoom(Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor)), center);
+	}
+
+	private void setZoom (double z, Point center)
+	{
+		if (z == zoom) return;
+		double x = (center.x + originX) / zoom, y = (center.y + originY) / zoom;
+		zoom = z;
+		originX = (int)Math.round(x * z) - center.x;
+		originY = (int)Math.round(y * z) - center.y;
+		tiles.setZoom(z);
+		scene = null;
+		repaint();
+	}
+
+	/**
+	 * Moves the viewport.
+	 * @param dx The horizontal distance the drawing is moved, in pixels
+	 * @param dy The vertical distance the drawing is moved, in pixels
+	 */
+	void pan (int dx, int dy)
+	{
+		if (dx == 0 && dy == 0) return;
+		originX -= dx;
+		originY -= dy;
+		scene = null;
+		repaint();
+	}
+
+	/**
+	 * Displays the drawing at 100%, with its origin in the upper left-hand corner.
+	 */
+	void resetViewport ()
+	{
+		originX = originY = 0;
+		setZoom(1, new Point());
+		scene = null;
+		repaint();
+	}
+
+	/**
+	 * Sets the outline of the marquee or lasso that is being drawn.
+	 * @param band The outline of the selection area in model coordinates, or
+	 * <code>null</code> if no area is being selected
+	 */
+	void setRubberBand (java.awt.Shape band)
+	{
+		Rectangle damage = null;
+		if (rubberBand != null)
+			damage = toView(rubberBand.getBounds2D());
+		if (band != null)
+			damage = damage == null ? toView(band.getBounds2D()) :
+			         damage.union(toView(band.getBounds2D()));
+		rubberBand = band;
+		if (damage != null) {
+			damage.grow(2, 2);
+			repaint(damage);
+		}
+	}
+
+	/**
+	 * Starts an interaction (a drag) that only changes the given shapes.
+	 * Until the interaction ends, all other shapes are painted from an image
+	 * that is rendered only once, and the active shapes are painted on top of it.
+	 * @param shapes The shapes that are moved or resized during the interaction
+	 * @see #endInteraction()
+	 */
+	void beginInteraction (Collection<Shape> shapes)
+	{
+		active = new ArrayList<Shape>(shapes);
+		Collections.sort(active, new Comparator<Shape>() {
+			public int compare (Shape a, Shape b)
+			{
+				return model.indexOf(a) - model.indexOf(b);
+			}
+		});
+		activeIds = new HashSet<Integer>();
+		for (Shape s : active)
+			activeIds.add(s.getId());
+		scene = null;
+	}
+
+	/**
+	 * Ends the interaction and drops the image of the static shapes.
+	 * @see #beginInteraction(Collection)
+	 */
+	void endInteraction ()
+	{
+		if (active == null) return;
+		active = null;
+		activeIds = null;
+		scene = null;
+		repaint();
+	}
+
+	/**
+	 * Turns off anti-aliasing while the drawing changes quickly, e.g., during
+	 * a drag or an animation. It's turned on again as soon as this method
+	 * hasn't been called for a moment.
+	 */
+	void busy ()
+	{
+		if (detail.isAntialiasing())
+			setDetail(detail.withAntialiasing(false));
+		idleTimer.restart();
+	}
+
+	private void setDetail (LevelOfDetail d)
+	{
+		detail = d;
+		tiles.setDetail(d);
+		scene = null;
+	}
+
+	/**
+	 * Renders all shapes that aren't active into an image as big as the canvas,
+	 * as they're displayed in the viewport.
+	 */
+	private BufferedImage renderScene ()
+	{
+		BufferedImage img = new BufferedImage(Math.max(getWidth(), 1),
+		                                      Math.max(getHeight(), 1),
+		                                      BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+		g.setColor(getBackground());
+		g.fillRect(0, 0, img.getWidth(), img.getHeight());
+		g.dispose();
+		List<Shape> shapes = model.snapshotIn(toModel(new Rectangle(0, 0, img.getWidth(),
+		                                                            img.getHeight())));
+		for (Iterator<Shape> it = shapes.iterator(); it.hasNext(); )
+			if (activeIds.contains(it.next().getId())) it.remove();
+		renderer.render(shapes, img, originX / zoom, originY / zoom, zoom, detail);
+		return img;
+	}
+
+	/**
+	 * Shows or hides the internal numbers of the shapes.
+	 * The numbers are drawn on top of the shapes; the model isn't changed.
+	 * @param visible <code>true</code> if the numbers are to be shown
+	 * @see gfxeditor.Shape#getNumber()
+	 */
+	void setNumbersVisible (boolean visible)
+	{
+		if (numbersVisible == visible) return; // e.g., key auto-repeat
+		numbersVisible = visible;
+		repaint();
+	}
+
+	/**
+	 * Paints the model's shapes in the viewport, as well as the shape numbers,
+	 * the selection and the outline of the marquee or lasso.
+	 * Small shapes are painted with less detail, and anti-aliasing is turned
+	 * off while the canvas is busy.
+	 * The shapes are painted from the cached tiles that intersect the clipping
+	 * area; tiles that have been invalidated are rendered again.
+	 * During an interaction, only the active shapes are painted on top of the
+	 * image of the static shapes.
 	 * @see gfxeditor.Shape#paint(Graphics2D)
+	 * @see TileCache
+	 * @see LevelOfDetail
 	 */
 	@Override
 	protected void paintComponent (Graphics g)
 	{
 		super.paintComponent(g);
 		Graphics2D gfx = (Graphics2D)g;
-		gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-		                     RenderingHints.VALUE_ANTIALIAS_ON);
-		for (Shape s : model.getShapes())
-			s.paint(gfx);
+		gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING, detail.isAntialiasing() ?
+		                     RenderingHints.VALUE_ANTIALIAS_ON :
+		                     RenderingHints.VALUE_ANTIALIAS_OFF);
+		if (gfx.getClipBounds() == null)
+			gfx.setClip(0, 0, getWidth(), getHeight());
+		if (active != null && (scene == null || scene.getWidth() < getWidth() ||
+		                       scene.getHeight() < getHeight()))
+			scene = renderScene();
+		// from now on, the coordinates are model coordinates multiplied by zoom
+		gfx.translate(-originX, -originY);
+		Rectangle clip = gfx.getClipBounds();
+		if (active != null) {
+			gfx.drawImage(scene, originX, originY, null);
+			BatchPainter painter = new BatchPainter(gfx, renderer.getOutlines(zoom), detail);
+			for (Shape s : active)
+				if (model.getShape(s.getId()) == s) painter.paint(s, s.getBounds());
+			painter.flush();
+		} else {
+			tiles.paint(gfx, clip);
+		}
+		if (numbersVisible)
+			paintNumbers(gfx);
+		paintSelection(gfx);
+		if (rubberBand != null) {
+			gfx.setColor(Color.GRAY);
+			gfx.setStroke(RUBBER_BAND_STROKE);
+			gfx.draw(AffineTransform.getScaleInstance(zoom, zoom).createTransformedShape(rubberBand));
+		}
+		gfx.translate(originX, originY);
+	}
+
+	/**
+	 * Draws the number of each shape that is within the clipping area in its
+	 * center, using the cached glyphs of the digits.
+	 */
+	private void paintNumbers (Graphics2D g)
+	{
+		Rectangle clip = g.getClipBounds();
+		clip.grow(LABEL_MARGIN, LABEL_MARGIN/2); // labels of shapes next to the clip
+		prepareDigits(g);
+		g.setColor(Color.WHITE);
+		for (Shape s : model.shapesIn(new Rectangle2D.Double(clip.x / zoom, clip.y / zoom,
+		                                                     clip.width / zoom,
+		                                                     clip.height / zoom))) {
+			int n = Math.abs(s.getNumber()), count = 0;
+			float width = 0;
+			do {
+				digitBuffer[count++] = n % 10;
+				width += digitWidths[n % 10];
+				n /= 10;
+			} while (n > 0);
+			float x = (float)((s.getX() + s.getWidth()/2.0) * zoom) - width/2,
+			      y = (float)((s.getY() + s.getHeight()/2.0) * zoom) + digitHeight/2;
+			while (count > 0) {
+				int d = digitBuffer[--count];
+				g.drawGlyphVector(digits[d], x, y);
+				x += digitWidths[d];
+			}
+		}
+	}
+
+	private void prepareDigits (Graphics2D g)
+	{
+		Font font = g.getFont();
+		FontRenderContext frc = g.getFontRenderContext();
+		if (digits != null && font.equals(digitFont) && frc.equals(digitContext))
+			return;
+		digits = new GlyphVector[10];
+		digitWidths = new float[10];
+		for (int d = 0; d < 10; d++) {
+			digits[d] = font.createGlyphVector(frc, new char[] {(char)('0' + d)});
+			digitWidths[d] = (float)digits[d].getLogicalBounds().getWidth();
+		}
+		digitHeight = (float)digits[0].getVisualBounds().getHeight();
+		digitFont = font;
+		digitContext = frc;
+	}
+
+	/**
+	 * Draws a dashed frame around each selected shape that is within the
+	 * clipping area.
+	 */
+	private void paintSelection (Graphics2D g)
+	{
+		Rectangle clip = g.getClipBounds();
+		g.setColor(Color.BLACK);
+		g.setStroke(SELECTION_STROKE);
+		for (int id : model.getSelection()) {
+			Shape s = model.getShape(id);
+			if (s == null) continue;
+			int x = s.getWidth()  < 0 ? s.getX() + s.getWidth()  : s.getX(),
+			    y = s.getHeight() < 0 ? s.getY() + s.getHeight() : s.getY(),
+			    w = (int)Math.round(Math.abs(s.getWidth()) * zoom),
+			    h = (int)Math.round(Math.abs(s.getHeight()) * zoom);
+			x = (int)Math.round(x * zoom);
+			y = (int)Math.round(y * zoom);
+			if (clip == null || clip.intersects(x - 1, y - 1, w + 2, h + 2))
+				g.drawRect(x - 1, y - 1, w + 1, h + 1);
+		}
+	}
+
+	/**
+	 * Invalidates the tiles and repaints the area of the viewport affected by a
+	 * change, or the whole canvas if the area is unknown.
+	 * If the shape numbers are visible, the area is enlarged, because a number
+	 * can be wider than its shape.
+	 * @see GraphicsEvent#getDamage()
+	 */
+	private void repaintDamage (GraphicsEvent e)
+	{
+		Rectangle damage = e.getDamage();
+		if (damage == null) {
+			scene = null; // static shapes may have changed as well
+			tiles.invalidateAll();
+			repaint();
+		}
+		else if (!damage.isEmpty()) {
+			tiles.invalidate(damage);
+			Rectangle r = toView(damage);
+			r.grow(2, 2);
+			if (numbersVisible)
+				r.grow(LABEL_MARGIN, LABEL_MARGIN/2);
+			repaint(r);
+		}
 	}
 
 	/**
@@ -78,26 +500,33 @@ public final class Canvas extends JPanel implements GraphicsListener
 	public void shapeSelected (GraphicsEvent e) { }
 
 	/**
-	 * Repaints the canvas.
+	 * Repaints the area of the new shape.
 	 */
 	public void shapeAdded (GraphicsEvent e)
 	{
-		repaint();
+		scene = null;
+		repaintDamage(e);
 	}
 
 	/**
-	 * Repaints the canvas.
+	 * Repaints the area of the changed shapes.
+	 * During an interaction, the image of the static shapes is dropped unless
+	 * the change is caused by an active shape.
 	 */
 	public void shapeChanged (GraphicsEvent e)
 	{
-		repaint();
+		Shape s = e.getShape();
+		if (activeIds != null && (s == null || !activeIds.contains(s.getId())))
+			scene = null;
+		repaintDamage(e);
 	}
 
 	/**
-	 * Repaints the canvas.
+	 * Repaints the area of the removed shapes.
 	 */
 	public void shapeDeleted (GraphicsEvent e)
 	{
-		repaint();
+		scene = null;
+		repaintDamage(e);
 	}
 }
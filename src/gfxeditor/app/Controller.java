@@ -9,11 +9,17 @@ import gfxeditor.factory.ShapeFactory;
 import gfxeditor.factory.TriangleFactory;
 import gfxeditor.prototype.ShapeTool;
 import gfxeditor.shapes.Circle;
+import gfxeditor.shapes.ImageAdapter;
 import gfxeditor.shapes.Rectangle;
 import gfxeditor.shapes.Square;
+import gfxeditor.visitors.BackwardVisitor;
+import gfxeditor.visitors.ForwardVisitor;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -21,13 +27,21 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.io.IOException;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.TransferHandler;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 import javax.swing.event.ListSelectionEvent;
@@ -44,8 +58,8 @@ import javax.swing.event.ListSelectionListener;
  * @see gfxeditor.Model
  */
 public class Controller
-implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
-           ListSelectionListener
+implements MouseListener, MouseMotionListener, MouseWheelListener, ActionListener,
+           KeyListener, ListSelectionListener
 {
 	private Model model;
 	private Canvas canvas;
@@ -55,7 +69,12 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	private ShapeTool tool; // currently used
 	private ShapeFactory factory; // currently used
 	private boolean moved;
-	private Point origin;
+	private Point origin, anchor, grip;
+	private Path2D lasso;
+	private Rectangle2D marquee;
+	private AnimationEngine animation;
+	private Timer release;
+	private int direction; // of the animation: 1 forwards, -1 backwards
 
 	/**
 	 * The width of the screen, in pixels.
@@ -70,6 +89,19 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	 */
 	static final String RES_PATH;
 
+	// zoom factor per notch of the mouse wheel
+	private static final double ZOOM_STEP = 1.25;
+
+	// pixels per animation step
+	private static final int ANIMATION_SPEED = 2;
+
+	// how long an arrow key must be released before the animation stops, in ms;
+	// bridges the gaps between the events of auto-repeated keys
+	private static final int RELEASE_DELAY = 50;
+
+	// shared by all random colors
+	private static final Random RANDOM = new Random();
+
 	static {
 		SCR_WIDTH = Toolkit.getDefaultToolkit().getScreenSize().width;
 		SCR_HEIGHT = Toolkit.getDefaultToolkit().getScreenSize().height;
@@ -79,14 +111,12 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 			new ShapeTool(new Square(-1, -1, null)),
 			new ShapeTool(new Circle(-1, -1, null))
 		};
-		try {
-			factories = new ShapeFactory[] {
-				new OvalFactory(),
-				new LineFactory(),
-				new TriangleFactory(),
-				new ImageFactory(Controller.class.getResource(RES_PATH + "Smiley.png"))
-			};
-		} catch (IOException ex) { ex.printStackTrace(); }
+		factories = new ShapeFactory[] {
+			new OvalFactory(),
+			new LineFactory(),
+			new TriangleFactory(),
+			new ImageFactory(Controller.class.getResource(RES_PATH + "Smiley.png"))
+		};
 	}
 
 	/**
@@ -130,6 +160,35 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 		selectTool("");
 		model.addGraphicsListener(canvas);
 		model.addGraphicsListener(window);
+		animation = new AnimationEngine(model, canvas);
+		release = new Timer(RELEASE_DELAY, new ActionListener() {
+			public void actionPerformed (ActionEvent e) { animation.stop(); }
+		});
+		release.setRepeats(false);
+		canvas.setTransferHandler(new TransferHandler() {
+			@Override
+			public boolean canImport (TransferSupport support)
+			{
+				return support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public boolean importData (TransferSupport support)
+			{
+				if (!canImport(support)) return false;
+				try {
+					List<File> files = (List<File>)support.getTransferable()
+						.getTransferData(DataFlavor.javaFileListFlavor);
+					Point p = support.isDrop() ? support.getDropLocation().getDropPoint()
+					                           : new Point();
+					return importImages(files, canvas.toModel(p));
+				} catch (Exception ex) {
+					ex.printStackTrace();
+					return false;
+				}
+			}
+		});
 		try {
 			UIManager.setLookAndFeel(selectPLAF());
 			SwingUtilities.updateComponentTreeUI(window);
@@ -177,12 +236,20 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	 * Performs the function of the active tool on the point where the
 	 * mouse button has been pressed.
 	 * If the select tool is active, shape selection is delegated to the model.
+	 * If there is no shape at the specified point, a marquee selection is started,
+	 * or a lasso selection if <i>Alt</i> is held down.
 	 * Otherwise a new shape will be created at the specified point.
+	 * <br>The middle mouse button grabs the drawing, so that it can be panned.
 	 * @see gfxeditor.Model#select(Point)
 	 */
 	public void mousePressed (MouseEvent e)
 	{
-		origin = e.getPoint();
+		if (SwingUtilities.isMiddleMouseButton(e)) {
+			grip = e.getPoint();
+			return;
+		}
+		if (grip != null) return;
+		origin = canvas.toModel(e.getPoint());
 		if (tool != null) {
 			try {
 				model.add(tool.createShape(origin.x, origin.y, randomColor()));
@@ -190,39 +257,88 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 				JOptionPane.showMessageDialog(window, ex, "", JOptionPane.ERROR_MESSAGE);
 			}
 		} else if (factory != null) {
-			model.add(factory.createShape(origin.x, origin.y, randomColor()));
+			Shape s = factory.createShape(origin.x, origin.y, randomColor());
+			model.add(s);
+			refreshWhenLoaded(s);
 		} else { // selection mode
-			model.removeNumberDecorators();
-			model.select(origin);
+			Shape hit = model.shapeAt(origin);
+			if (hit == null) {
+				if (!e.isControlDown() && !e.isMetaDown())
+					model.setSelected(null);
+				anchor = origin;
+				if (e.isAltDown()) {
+					lasso = new Path2D.Float();
+					lasso.moveTo(origin.x, origin.y);
+				} else {
+					marquee = new Rectangle2D.Float(origin.x, origin.y, 0, 0);
+				}
+			} else if (!model.isSelected(hit)) {
+				model.select(origin);
+			}
 		}
 		moved = false;
 	}
 
 	/**
-	 * Finishes the resizing of the newly created shape.
+	 * Finishes the resizing of the newly created shape, or selects the shapes
+	 * inside the marquee or lasso.
+	 * If <i>Ctrl</i> is held down, they are added to the current selection.
+	 * @see gfxeditor.Model#selectIn(java.awt.Shape, boolean)
 	 */
 	public void mouseReleased (MouseEvent e)
 	{
+		if (grip != null) {
+			if (SwingUtilities.isMiddleMouseButton(e)) grip = null;
+			return;
+		}
+		if (origin == null) return;
+		canvas.endInteraction();
 		if (tool != null || factory != null)
 			model.finish(!moved);
-		origin = null;
+		else if (lasso != null) {
+			lasso.closePath();
+			model.selectIn(lasso, e.isControlDown() || e.isMetaDown());
+		} else if (marquee != null)
+			model.selectIn(marquee, e.isControlDown() || e.isMetaDown());
+		if (lasso != null || marquee != null)
+			canvas.setRubberBand(null);
+		origin = anchor = null;
+		lasso = null;
+		marquee = null;
 	}
 
 	/**
-	 * Resizes the newly created shape or moves the selected shape,
-	 * depending on the active tool.
+	 * Resizes the newly created shape, moves the selected shapes or
+	 * extends the marquee or lasso, depending on the active tool.
+	 * When the drag starts, the canvas is told which shapes are going to change.
+	 * @see Canvas#beginInteraction(java.util.Collection)
 	 */
 	public void mouseDragged (MouseEvent e)
 	{
+		if (grip != null) {
+			canvas.pan(e.getX() - grip.x, e.getY() - grip.y);
+			grip = e.getPoint();
+			return;
+		}
+		if (origin == null) return;
+		if (!moved)
+			beginInteraction();
 		moved = true;
-		if (tool != null || factory != null)
-			model.resize(e.getPoint());
-		else if (model.getSelected() != null) {
-			Shape s = model.getSelected();
-			model.moveSelected(new Point(s.getX()+e.getPoint().x-origin.x,
-			                             s.getY()+e.getPoint().y-origin.y));
+		Point p = canvas.toModel(e.getPoint());
+		if (tool != null || factory != null) {
+			canvas.busy();
+			model.resize(p);
+		} else if (lasso != null) {
+			lasso.lineTo(p.x, p.y);
+			canvas.setRubberBand(lasso);
+		} else if (marquee != null) {
+			marquee.setFrameFromDiagonal(anchor, p);
+			canvas.setRubberBand(marquee);
+		} else {
+			canvas.busy();
+			model.moveSelection(p.x - origin.x, p.y - origin.y);
 		}
-		origin = e.getPoint();
+		origin = p;
 	}
 
 	/**
@@ -230,6 +346,29 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	 */
 	public void mouseMoved (MouseEvent e) { }
 
+	/**
+	 * Zooms in or out around the mouse pointer.
+	 * @see Canvas#zoom(double, Point)
+	 */
+	public void mouseWheelMoved (MouseWheelEvent e)
+	{
+		canvas.zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+	}
+
+	private void beginInteraction ()
+	{
+		List<Shape> shapes = new ArrayList<Shape>();
+		if (tool != null || factory != null) {
+			if (model.getCurrent() != null)
+				shapes.add(model.getCurrent());
+		} else if (lasso == null && marquee == null) {
+			for (int id : model.getSelection())
+				shapes.add(model.getShape(id));
+		}
+		if (!shapes.isEmpty())
+			canvas.beginInteraction(shapes);
+	}
+
 	/**
 	 * Selects the tool selected in the tool bar.
 	 * This can be a <code>ShapeTool</code> (prototype), a <code>ShapeFactory</code>,
@@ -264,8 +403,46 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 
 	private static Color randomColor ()
 	{
-		Random rnd = new Random();
-		return new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256));
+		return new Color(RANDOM.nextInt(256), RANDOM.nextInt(256), RANDOM.nextInt(256));
+	}
+
+	/**
+	 * Imports image files as thumbnails in the background, showing the progress
+	 * in the window.
+	 * @param files The image files, or directories containing image files
+	 * @param p The top-left corner of the thumbnails, in model coordinates
+	 * @return <code>false</code> if there are no image files to import
+	 * @see ImageImport
+	 */
+	private boolean importImages (List<File> files, Point p)
+	{
+		final ImageImport task = new ImageImport(model, files, p);
+		if (task.getFileCount() == 0) return false;
+		task.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange (PropertyChangeEvent e)
+			{
+				if (task.isDone())
+					window.showProgress(-1);
+				else if ("progress".equals(e.getPropertyName()))
+					window.showProgress(task.getProgress());
+			}
+		});
+		window.showProgress(0);
+		task.execute();
+		return true;
+	}
+
+	/**
+	 * Repaints an image shape as soon as its image has been decoded; until then,
+	 * it's painted as a placeholder.
+	 * @param s A newly created shape
+	 */
+	private void refreshWhenLoaded (final Shape s)
+	{
+		if (!(s instanceof ImageAdapter) || !((ImageAdapter)s).isLoading()) return;
+		((ImageAdapter)s).whenLoaded(new Runnable() {
+			public void run () { model.refresh(s); }
+		});
 	}
 
 	/**
@@ -280,9 +457,12 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	}
 
 	/**
-	 * Deselects all shapes on <i>Esc</i>, or deletes the selected shape on <i>Del</i>
-	 * and <i>Backspace</i>, or adds a number decorator to all shapes on <i>Shift</i>.
-	 * @see gfxeditor.Model#addNumberDecorators()
+	 * Deselects all shapes on <i>Esc</i>, or deletes the selected shapes on <i>Del</i>
+	 * and <i>Backspace</i>, or gives the selected shapes a new random color on
+	 * <i>C</i>, or shows the numbers of all shapes on <i>Shift</i>, or resets
+	 * the zoom level and position of the viewport on <i>0</i>, or animates all
+	 * shapes while an arrow key is held down.
+	 * @see Canvas#setNumbersVisible(boolean)
 	 */
 	public void keyPressed (KeyEvent e)
 	{
@@ -291,25 +471,52 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 			model.setSelected(null); break;
 		case KeyEvent.VK_DELETE:
 		case KeyEvent.VK_BACK_SPACE:
-			model.delete(model.getSelected()); break;
+			model.deleteSelection(); break;
+		case KeyEvent.VK_C:
+			model.recolorSelection(randomColor()); break;
 		case KeyEvent.VK_SHIFT:
-			model.addNumberDecorators(); break;
+			canvas.setNumbersVisible(true); break;
+		case KeyEvent.VK_0:
+		case KeyEvent.VK_NUMPAD0:
+			canvas.resetViewport(); break;
 		case KeyEvent.VK_RIGHT:
-			model.animateForwards(2); break;
+			animate(1); break;
 		case KeyEvent.VK_LEFT:
-			model.animateBackwards(2); break;
+			animate(-1); break;
 		}
 	}
 
 	/**
-	 * Removes all number decorators from the shapes on <i>Shift</i>.
-	 * @see gfxeditor.Model#removeNumberDecorators()
+	 * Starts animating the shapes forwards or backwards, unless they're animated
+	 * in this direction already.
+	 * @param direction 1 for forwards, -1 for backwards
+	 * @see AnimationEngine
+	 */
+	private void animate (int direction)
+	{
+		release.stop();
+		if (animation.isRunning() && this.direction == direction) return;
+		this.direction = direction;
+		animation.start(direction > 0 ? new ForwardVisitor(ANIMATION_SPEED)
+		                               : new BackwardVisitor(ANIMATION_SPEED));
+	}
+
+	/**
+	 * Hides the numbers of the shapes on <i>Shift</i>, or stops the animation
+	 * when its arrow key is released.
+	 * @see Canvas#setNumbersVisible(boolean)
 	 */
 	public void keyReleased (KeyEvent e)
 	{
 		switch (e.getKeyCode()) {
 		case KeyEvent.VK_SHIFT:
-			model.removeNumberDecorators(); break;
+			canvas.setNumbersVisible(false); break;
+		case KeyEvent.VK_RIGHT:
+			if (direction > 0) release.restart();
+			break;
+		case KeyEvent.VK_LEFT:
+			if (direction < 0) release.restart();
+			break;
 		}
 	}
 
@@ -321,12 +528,15 @@ implements MouseListener, MouseMotionListener, ActionListener, KeyListener,
 	/**
 	 * Selects the shape corresponding to the selected value from the <code>JList</code>.
 	 * Also activates the select tool in the tool bar.
+	 * Nothing happens if the value is the model's selected shape already,
+	 * i.e., if the list merely reflects a selection made on the canvas, which
+	 * may consist of several shapes.
 	 * @see gfxeditor.Model#setSelected(Shape)
 	 */
 	public void valueChanged (ListSelectionEvent e)
 	{
 		Object value = ((JList)e.getSource()).getSelectedValue();
-		if (value == null) return;
+		if (value == null || value == model.getSelected()) return;
 		model.setSelected((Shape)value);
 		window.activateSelectTool();
 	}
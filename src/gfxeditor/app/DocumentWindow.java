@@ -1,5 +1,6 @@
 package gfxeditor.app;
 
+import gfxeditor.Model;
 import gfxeditor.Shape;
 import gfxeditor.event.GraphicsEvent;
 import gfxeditor.event.GraphicsListener;
@@ -9,10 +10,12 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JToggleButton;
@@ -38,9 +41,13 @@ public final class DocumentWindow extends JFrame implements GraphicsListener
 {
 	private JToolBar toolbar;
 	private JSplitPane pane;
+	private JProgressBar progress;
 	private JList list;
+	private Model model;
 	private JToggleButton select;
 
+	private static final String LONGEST_NAME = "Image+Rectangle 0000000";
+
 	/**
 	 * Constructs a document window.
 	 * Also loads the prototypes/factories
@@ -68,7 +75,13 @@ public final class DocumentWindow extends JFrame implements GraphicsListener
 		pane.setOneTouchExpandable(true);
 		pane.setResizeWeight(1);
 		pane.setDividerLocation(240);
-		list = new JList(ctrl.getModel());
+		model = ctrl.getModel();
+		list = new JList(model);
+		// a fixed cell size avoids measuring every cell
+		Dimension cell = new DefaultListCellRenderer().getListCellRendererComponent(
+			list, LONGEST_NAME, 0, false, false).getPreferredSize();
+		list.setFixedCellWidth(cell.width);
+		list.setFixedCellHeight(cell.height);
 		list.setBorder(BorderFactory.createEmptyBorder());
 		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		list.addListSelectionListener(ctrl);
@@ -82,6 +95,10 @@ public final class DocumentWindow extends JFrame implements GraphicsListener
 		pane.setBorder(BorderFactory.createMatteBorder(0, 1, 0, 0,
 			MetalLookAndFeel.getControlDarkShadow()));
 		add(pane, BorderLayout.CENTER);
+		progress = new JProgressBar(0, 100);
+		progress.setStringPainted(true);
+		progress.setVisible(false);
+		add(progress, BorderLayout.SOUTH);
 
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		pack();
@@ -122,14 +139,19 @@ public final class DocumentWindow extends JFrame implements GraphicsListener
 	/**
 	 * Selects the active <code>Shape</code> in the <code>JList</code>,
 	 * or deselects everything if no shape is active.
+	 * The position of the shape is looked up in the model, rather than
+	 * searching the list.
+	 * @see gfxeditor.Model#indexOf(Shape)
 	 */
 	public void shapeSelected (GraphicsEvent e)
 	{
-		Shape shape = e.getShape();
-		if (shape == null)
+		int index = model.indexOf(e.getShape());
+		if (index == -1)
 			list.clearSelection();
-		else
-			list.setSelectedValue(shape, true);
+		else {
+			list.setSelectedIndex(index);
+			list.ensureIndexIsVisible(index);
+		}
 	}
 
 	/**
@@ -150,6 +172,19 @@ public final class DocumentWindow extends JFrame implements GraphicsListener
 		list.clearSelection();
 	}
 
+	/**
+	 * Shows the progress of a long-running task at the bottom of the window.
+	 * @param percent The percentage of the task that is done, or a negative
+	 * number to hide the progress bar
+	 * @since 2.1
+	 */
+	protected void showProgress (int percent)
+	{
+		progress.setVisible(percent >= 0);
+		progress.setValue(Math.max(percent, 0));
+		validate();
+	}
+
 	/**
 	 * Makes the select tool the active one.
 	 */
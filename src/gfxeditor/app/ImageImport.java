@@ -0,0 +1,184 @@
+package gfxeditor.app;
+
+import gfxeditor.Model;
+import gfxeditor.Shape;
+import gfxeditor.image.ImageHandle;
+import gfxeditor.image.ImageStore;
+import gfxeditor.image.TiledImage;
+import gfxeditor.shapes.ImageAdapter;
+import gfxeditor.shapes.Rectangle;
+import java.awt.Color;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.SwingWorker;
+
+/**
+ * Imports many image files at once, as thumbnails arranged in a grid.
+ *
+ * <p>The files are decoded and scaled down in parallel, on a pool with one
+ * thread per processor. Every image is decoded at the smallest subsampled
+ * resolution that still covers its thumbnail, so large files don't have to be
+ * decoded completely. The thumbnails are put into the shared
+ * <code>ImageStore</code>.
+ * <br>As soon as images are done, their shapes are added to the model on the
+ * event dispatch thread, in batches; each batch fires a single event. The
+ * <code>progress</code> property reports how many of the files have been
+ * processed so far, in percent.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Model#addAll(List)
+ */
+final class ImageImport extends SwingWorker<Integer, ImageImport.Result>
+{
+	/** The maximum width and height of a thumbnail. */
+	static final int THUMBNAIL_SIZE = 160;
+
+	// space between the thumbnails in the grid
+	private static final int GAP = 10;
+
+	private final Model model;
+	private final List<File> files;
+	private final Point origin;
+	private final int columns;
+
+	static final class Result
+	{
+		final int index;
+		final ImageHandle image;
+
+		Result (int index, ImageHandle image)
+		{
+			this.index = index;
+			this.image = image;
+		}
+	}
+
+	/**
+	 * Prepares the import of image files.
+	 * Directories are replaced with the image files they contain.
+	 * @param model The model the shapes are added to
+	 * @param files The image files or directories
+	 * @param origin The top-left corner of the grid, in model coordinates
+	 */
+	ImageImport (Model model, List<File> files, Point origin)
+	{
+		this.model = model;
+		this.files = expand(files);
+		this.origin = origin;
+		columns = Math.max(1, (int)Math.ceil(Math.sqrt(this.files.size())));
+	}
+
+	/**
+	 * Returns the number of image files to be imported.
+	 * @return The number of files, not including directories
+	 */
+	int getFileCount () { return files.size(); }
+
+	/**
+	 * Decodes the files and publishes each image as soon as it's done.
+	 * @return The number of images that could be read
+	 */
+	@Override
+	protected Integer doInBackground () throws InterruptedException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> done = new ExecutorCompletionService<Result>(pool);
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				final int index = i;
+				done.submit(new Callable<Result>() {
+					public Result call () throws IOException
+					{
+						return new Result(index, decode(files.get(index)));
+					}
+				});
+			}
+			int count = 0;
+			for (int i = 0; i < files.size() && !isCancelled(); i++) {
+				try {
+					publish(done.take().get());
+					count++;
+				} catch (ExecutionException ex) {
+					ex.getCause().printStackTrace();
+				}
+				setProgress(100 * (i + 1) / files.size());
+			}
+			return count;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds the shapes of a batch of images to the model.
+	 */
+	@Override
+	protected void process (List<Result> batch)
+	{
+		List<Shape> shapes = new ArrayList<Shape>(batch.size());
+		int cell = THUMBNAIL_SIZE + GAP;
+		for (Result r : batch) {
+			Rectangle box = new Rectangle(origin.x + r.index % columns * cell,
+			                              origin.y + r.index / columns * cell, Color.WHITE);
+			box.setSize(r.image.getWidth(), r.image.getHeight());
+			box.setFilled(false);
+			shapes.add(new ImageAdapter(box, r.image));
+		}
+		model.addAll(shapes);
+	}
+
+	private static ImageHandle decode (File file) throws IOException
+	{
+		TiledImage img = new TiledImage(file.toURI().toURL());
+		try {
+			double scale = Math.min(1, (double)THUMBNAIL_SIZE /
+			                           Math.max(img.getWidth(), img.getHeight()));
+			int w = Math.max(1, (int)Math.round(img.getWidth() * scale)),
+			    h = Math.max(1, (int)Math.round(img.getHeight() * scale));
+			return ImageStore.getShared().put(img.read(w, h));
+		} finally {
+			img.close();
+		}
+	}
+
+	private static List<File> expand (List<File> files)
+	{
+		List<File> images = new ArrayList<File>();
+		for (File f : files) {
+			if (f.isDirectory()) {
+				File[] children = f.listFiles();
+				if (children == null) continue;
+				Arrays.sort(children);
+				for (File c : children)
+					if (c.isFile() && isImage(c)) images.add(c);
+			} else if (f.isFile()) {
+				images.add(f);
+			}
+		}
+		return images;
+	}
+
+	private static boolean isImage (File f)
+	{
+		String name = f.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) return false;
+		String suffix = name.substring(dot + 1).toLowerCase();
+		for (String s : ImageIO.getReaderFileSuffixes())
+			if (s.equalsIgnoreCase(suffix)) return true;
+		return false;
+	}
+}
@@ -0,0 +1,43 @@
+package gfxeditor.event;
+
+import gfxeditor.Shape;
+import java.util.EventObject;
+
+/**
+ * This class represents an event that occurs when the bounds of two shapes
+ * start or stop overlapping.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see CollisionListener
+ */
+@SuppressWarnings("serial")
+public class CollisionEvent extends EventObject
+{
+	private final Shape first, second;
+
+	/**
+	 * Constructs a collision event.
+	 * @param source The model firing this event
+	 * @param first The shape that is lower in the z-order
+	 * @param second The other shape
+	 */
+	public CollisionEvent (Object source, Shape first, Shape second)
+	{
+		super(source);
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * Returns one of the colliding shapes.
+	 * @return The <code>Shape</code> object that is lower in the z-order
+	 */
+	public Shape getFirst () { return first; }
+
+	/**
+	 * Returns the other colliding shape.
+	 * @return The <code>Shape</code> object that is higher in the z-order
+	 */
+	public Shape getSecond () { return second; }
+}
@@ -0,0 +1,28 @@
+package gfxeditor.event;
+
+import java.util.EventListener;
+
+/**
+ * An <code>EventListener</code> that is notified when shapes collide during
+ * an animation.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.Model#addCollisionListener(CollisionListener)
+ */
+public interface CollisionListener extends EventListener
+{
+	/**
+	 * Invoked when the bounds of two shapes have started to overlap.
+	 * @param e The <code>CollisionEvent</code> object
+	 */
+	void collisionStarted (CollisionEvent e);
+
+	/**
+	 * Invoked when the bounds of two shapes don't overlap anymore,
+	 * or one of them has been removed from the model; this is reported with
+	 * the next animation step.
+	 * @param e The <code>CollisionEvent</code> object
+	 */
+	void collisionEnded (CollisionEvent e);
+}
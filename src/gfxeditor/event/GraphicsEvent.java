@@ -1,6 +1,7 @@
 package gfxeditor.event;
 
 import gfxeditor.Shape;
+import java.awt.Rectangle;
 import java.util.EventObject;
 
 // Stage 1
@@ -10,6 +11,8 @@ import java.util.EventObject;
  *
  * <p><b>Note:</b> This also includes the (de)selection of a drawing object.
  * <br>The <code>Shape</code> object stored in this class is always required.
+ * <br>The event may also carry the bounds of the affected shapes before and
+ * after the change, so that views only need to update the damaged area.
  *
  * @author vbwx
  * @version 1.0
@@ -19,6 +22,8 @@ import java.util.EventObject;
 public class GraphicsEvent extends EventObject
 {
 	private Shape shape;
+	private Rectangle oldBounds, newBounds;
+	private boolean bounded;
 
 	/**
 	 * Returns the changed shape.
@@ -40,4 +45,64 @@ public class GraphicsEvent extends EventObject
 		super(source);
 		this.shape = shape;
 	}
+
+	/**
+	 * Constructs a graphics event, storing the changed shape object and the area
+	 * that is affected by the change.
+	 * @param source The model firing this event
+	 * @param shape The <code>Shape</code> object that has been changed,
+	 * or <code>null</code> if a shape has been removed from the model or
+	 * all shapes have been deselected.
+	 * @param oldBounds The union of the bounds of all affected shapes before the
+	 * change, or <code>null</code> if the shapes didn't exist before
+	 * @param newBounds The union of the bounds of all affected shapes after the
+	 * change, or <code>null</code> if the shapes don't exist anymore
+	 * @since 2.1
+	 */
+	public GraphicsEvent (Object source, Shape shape,
+	                      Rectangle oldBounds, Rectangle newBounds)
+	{
+		this(source, shape);
+		this.oldBounds = oldBounds;
+		this.newBounds = newBounds;
+		bounded = true;
+	}
+
+	/**
+	 * Returns the bounds of the affected shapes before the change.
+	 * @return The union of the old bounds, or <code>null</code> if it is unknown
+	 * or there were no such shapes
+	 * @since 2.1
+	 */
+	public Rectangle getOldBounds ()
+	{
+		return oldBounds == null ? null : new Rectangle(oldBounds);
+	}
+
+	/**
+	 * Returns the bounds of the affected shapes after the change.
+	 * @return The union of the new bounds, or <code>null</code> if it is unknown
+	 * or there are no such shapes
+	 * @since 2.1
+	 */
+	public Rectangle getNewBounds ()
+	{
+		return newBounds == null ? null : new Rectangle(newBounds);
+	}
+
+	/**
+	 * Returns the area that needs to be repainted, i.e., the union of the old
+	 * and the new bounds.
+	 * @return A new <code>Rectangle</code> object, which is empty if nothing
+	 * visible has changed, or <code>null</code> if the whole drawing may have
+	 * changed
+	 * @since 2.1
+	 */
+	public Rectangle getDamage ()
+	{
+		if (!bounded) return null;
+		if (oldBounds == null)
+			return newBounds == null ? new Rectangle() : new Rectangle(newBounds);
+		return newBounds == null ? new Rectangle(oldBounds) : oldBounds.union(newBounds);
+	}
 }
@@ -1,27 +1,27 @@
 package gfxeditor.factory;
 
 import gfxeditor.Shape;
+import gfxeditor.image.AsyncImage;
 import gfxeditor.shapes.ImageAdapter;
 import gfxeditor.shapes.Square;
 import java.awt.Color;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.net.URL;
-import javax.imageio.ImageIO;
 
 // Extension 1
 public class ImageFactory extends ShapeFactory
 {
-	private final BufferedImage image;
+	private final AsyncImage image;
 
-	public ImageFactory (URL path) throws IOException
+	public ImageFactory (URL path)
 	{
-		image = ImageIO.read(path);
+		image = new AsyncImage(path);
 	}
 	
 	public Shape createShape (int x, int y, Color c)
 	{
-		return new ImageAdapter(new Square(x, y, c), image);
+		Square box = new Square(x, y, c);
+		box.setFilled(false); // so that clicks go through transparent pixels
+		return new ImageAdapter(box, image);
 	}
 
 	public String getName ()
@@ -0,0 +1,154 @@
+package gfxeditor.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+
+/**
+ * An image that is decoded in the background.
+ *
+ * <p>Decoding starts as soon as the object is constructed, on a thread pool
+ * that is shared by all images. Until it's finished, <code>getImage()</code>
+ * returns <code>null</code>. When it's finished, the image is made available on
+ * the event dispatch thread, and the listeners registered with
+ * <code>whenLoaded(Runnable)</code> are run there.
+ * <br>Images that are larger than <code>PREVIEW_SIZE</code> are only decoded at
+ * a reduced resolution; the full resolution is available piecewise from
+ * <code>getTiles()</code>.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.factory.ImageFactory
+ */
+public class AsyncImage
+{
+	/** The maximum width and height of an image that is decoded as a whole. */
+	public static final int PREVIEW_SIZE = 2048;
+
+	private static final ExecutorService decoder =
+		Executors.newFixedThreadPool(2, new ThreadFactory() {
+			public Thread newThread (Runnable r)
+			{
+				Thread t = new Thread(r, "Image Decoder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	private final URL source;
+	private volatile ImageHandle image;
+	private volatile TiledImage tiles;
+	private volatile boolean loading;
+	private List<Runnable> listeners;
+
+	/**
+	 * Starts decoding an image.
+	 * If the image can't be read, the error is printed and the image stays empty.
+	 * @param source The location of the image file
+	 */
+	public AsyncImage (final URL source)
+	{
+		this.source = source;
+		loading = true;
+		listeners = new ArrayList<Runnable>();
+		decoder.execute(new Runnable() {
+			public void run ()
+			{
+				BufferedImage img = null;
+				TiledImage t = null;
+				try {
+					t = new TiledImage(source);
+					int level = 0;
+					while ((t.getWidth() >> level) > PREVIEW_SIZE ||
+					       (t.getHeight() >> level) > PREVIEW_SIZE)
+						level++;
+					img = t.read(level);
+					if (level == 0) {
+						t.close();
+						t = null;
+					}
+				} catch (IOException ex) {
+					ex.printStackTrace();
+					if (t != null) t.close();
+					t = null;
+				}
+				final ImageHandle result = ImageStore.getShared().put(img);
+				final TiledImage large = t;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run () { finish(result, large); }
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the location of the image file.
+	 * @return The <code>URL</code> the image is read from
+	 */
+	public URL getSource () { return source; }
+
+	/**
+	 * Returns the decoded image.
+	 * @return A <code>BufferedImage</code>, or <code>null</code> if the image is
+	 * still being decoded or couldn't be read; for a large image, a version
+	 * with a reduced resolution
+	 */
+	public BufferedImage getImage ()
+	{
+		ImageHandle h = image;
+		return h != null ? h.getImage() : null;
+	}
+
+	/**
+	 * Returns the handle of the decoded image in the shared
+	 * <code>ImageStore</code>.
+	 * @return An <code>ImageHandle</code>, or <code>null</code> if the image is
+	 * still being decoded or couldn't be read
+	 * @see #getImage()
+	 */
+	public ImageHandle getHandle () { return image; }
+
+	/**
+	 * Returns the full resolution of a large image.
+	 * @return A <code>TiledImage</code>, or <code>null</code> if the image
+	 * returned by <code>getImage()</code> has the full resolution already
+	 */
+	public TiledImage getTiles () { return tiles; }
+
+	/**
+	 * Checks if the image is still being decoded.
+	 * @return <code>true</code> until decoding has finished or failed
+	 */
+	public boolean isLoading () { return loading; }
+
+	/**
+	 * Registers a task that is run when decoding has finished or failed.
+	 * If this has already happened, the task is run immediately.
+	 * This method must be called on the event dispatch thread.
+	 * @param r The task to be run on the event dispatch thread
+	 */
+	public void whenLoaded (Runnable r)
+	{
+		if (loading)
+			listeners.add(r);
+		else
+			r.run();
+	}
+
+	private void finish (ImageHandle img, TiledImage large)
+	{
+		image = img;
+		tiles = large;
+		loading = false;
+		List<Runnable> l = listeners;
+		listeners = null;
+		for (Runnable r : l)
+			r.run();
+	}
+}
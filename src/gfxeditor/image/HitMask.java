@@ -0,0 +1,99 @@
+package gfxeditor.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Records which pixels of an image are opaque, one bit per pixel, so that
+ * it can be checked quickly whether a point hits the image.
+ *
+ * <p>Masks exist for the same levels as the scaled versions of an image:
+ * each level is half as wide and high as the previous one, and a pixel of it
+ * is opaque if any of the four pixels it covers is.
+ * <br>Masks are immutable.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see ImageHandle#getHitMask(double, double)
+ */
+public final class HitMask
+{
+	/** The smallest alpha value of a pixel that counts as opaque. */
+	public static final int ALPHA_THRESHOLD = 32;
+
+	private final int width, height;
+	private final long[] bits;
+
+	private HitMask (int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		bits = new long[(int)(((long)width * height + 63) >> 6)];
+	}
+
+	/**
+	 * Creates the mask of an image at its full resolution.
+	 * @param img The image
+	 * @return A <code>HitMask</code> where every pixel is opaque if the image
+	 * has no alpha channel
+	 */
+	public static HitMask of (BufferedImage img)
+	{
+		int w = img.getWidth(), h = img.getHeight();
+		HitMask m = new HitMask(w, h);
+		boolean alpha = img.getColorModel().hasAlpha();
+		int[] row = new int[w];
+		for (int y = 0; y < h; y++) {
+			if (alpha) img.getRGB(0, y, w, 1, row, 0, w);
+			for (int x = 0; x < w; x++)
+				if (!alpha || row[x] >>> 24 >= ALPHA_THRESHOLD)
+					m.set(x, y);
+		}
+		return m;
+	}
+
+	/**
+	 * Creates the mask of the next level.
+	 * @return A <code>HitMask</code> half as wide and high as this one
+	 */
+	public HitMask half ()
+	{
+		HitMask m = new HitMask(Math.max(1, width / 2), Math.max(1, height / 2));
+		for (int y = 0; y < m.height; y++)
+			for (int x = 0; x < m.width; x++)
+				if (contains(2*x, 2*y) || contains(2*x+1, 2*y) ||
+				    contains(2*x, 2*y+1) || contains(2*x+1, 2*y+1))
+					m.set(x, y);
+		return m;
+	}
+
+	/**
+	 * Returns the width of the mask.
+	 * @return The width in pixels
+	 */
+	public int getWidth () { return width; }
+
+	/**
+	 * Returns the height of the mask.
+	 * @return The height in pixels
+	 */
+	public int getHeight () { return height; }
+
+	/**
+	 * Checks if a pixel is opaque.
+	 * @param x The horizontal position of the pixel
+	 * @param y The vertical position of the pixel
+	 * @return <code>true</code> if the pixel is within the mask and opaque
+	 */
+	public boolean contains (int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		long i = (long)y * width + x;
+		return (bits[(int)(i >> 6)] & (1L << i)) != 0;
+	}
+
+	private void set (int x, int y)
+	{
+		long i = (long)y * width + x;
+		bits[(int)(i >> 6)] |= 1L << i;
+	}
+}
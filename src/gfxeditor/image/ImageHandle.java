@@ -0,0 +1,94 @@
+package gfxeditor.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Refers to an image in an <code>ImageStore</code>.
+ *
+ * <p>There is exactly one handle for each distinct image content, so shapes
+ * that show the same image share the same handle, no matter where the image
+ * came from. The handle itself doesn't hold the pixels; they're kept by the
+ * store and may be moved to disk while they aren't used. The hit masks of the
+ * image are kept by the handle.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see ImageStore#put(java.awt.Image)
+ */
+public final class ImageHandle
+{
+	private final ImageStore store;
+	private final String hash;
+	private final int width, height;
+	private final List<HitMask> masks;
+	File spill;
+
+	ImageHandle (ImageStore store, String hash, int width, int height)
+	{
+		this.store = store;
+		this.hash = hash;
+		this.width = width;
+		this.height = height;
+		masks = new ArrayList<HitMask>();
+	}
+
+	/**
+	 * Returns the hash of the image content.
+	 * @return A hexadecimal string that identifies the image in its store
+	 */
+	public String getHash () { return hash; }
+
+	/**
+	 * Returns the width of the image.
+	 * @return The width in pixels
+	 */
+	public int getWidth () { return width; }
+
+	/**
+	 * Returns the height of the image.
+	 * @return The height in pixels
+	 */
+	public int getHeight () { return height; }
+
+	/**
+	 * Returns the pixels of the image, reading them back from disk if they
+	 * have been moved there.
+	 * @return A <code>BufferedImage</code>, which must not be modified, or
+	 * <code>null</code> if the image can't be read back
+	 */
+	public BufferedImage getImage () { return store.get(this); }
+
+	/**
+	 * Returns the mask of the opaque pixels of the image, at the level that
+	 * suits the size the image is shown with.
+	 * Masks are created when they're needed for the first time.
+	 * @param width The width the image is shown with
+	 * @param height The height the image is shown with
+	 * @return The smallest <code>HitMask</code> that is at least as large as the
+	 * given size, or <code>null</code> if the image can't be read
+	 */
+	public synchronized HitMask getHitMask (double width, double height)
+	{
+		int level = 0;
+		while ((this.width >> (level + 1)) >= Math.max(width, 1) &&
+		       (this.height >> (level + 1)) >= Math.max(height, 1))
+			level++;
+		if (masks.isEmpty()) {
+			BufferedImage img = getImage();
+			if (img == null) return null;
+			masks.add(HitMask.of(img));
+		}
+		while (masks.size() <= level)
+			masks.add(masks.get(masks.size() - 1).half());
+		return masks.get(level);
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "Image " + hash.substring(0, 8) + " (" + width + "x" + height + ")";
+	}
+}
@@ -0,0 +1,273 @@
+package gfxeditor.image;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import javax.imageio.ImageIO;
+
+/**
+ * Keeps a single copy of every distinct image, identified by a hash of its
+ * content.
+ *
+ * <p>Adding an image whose pixels are identical to those of an image that is
+ * already stored returns the existing <code>ImageHandle</code>, so memory
+ * grows with the number of distinct images, not with the number of shapes
+ * showing them.
+ * <br>When the pixels of all images take up more memory than the budget
+ * allows, the least recently used ones are written to a PNG file in the
+ * temporary directory and dropped from memory. They're read back when they're
+ * needed again. The file is kept, so an image is written at most once.
+ * <br>The store can be used by several threads at once. Files are never
+ * written or read while the store is locked: images are written by a
+ * background thread, and stay available in memory until they're written;
+ * an image is read by the first thread that needs it, while other threads
+ * needing the same image wait for it without blocking the store.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see ImageHandle
+ */
+public class ImageStore
+{
+	private static final ImageStore shared = new ImageStore(128L << 20);
+	private static final Executor writer =
+		Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread (Runnable r)
+			{
+				Thread t = new Thread(r, "Image Spiller");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	private final long maxBytes;
+	private final Map<String, ImageHandle> handles;
+	private final Map<ImageHandle, BufferedImage> images;
+	// images that are being written to disk, and images that are being read
+	private final Map<ImageHandle, BufferedImage> writing;
+	private final Map<ImageHandle, FutureTask<BufferedImage>> reading;
+	private long bytes;
+
+	/**
+	 * Returns the store that is shared by all image shapes.
+	 * @return The shared <code>ImageStore</code>
+	 */
+	public static ImageStore getShared () { return shared; }
+
+	/**
+	 * Constructs an empty store.
+	 * @param maxBytes The maximum amount of memory used by the pixels of the
+	 * images that are kept in memory
+	 */
+	public ImageStore (long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		handles = new HashMap<String, ImageHandle>();
+		images = new LinkedHashMap<ImageHandle, BufferedImage>(16, 0.75F, true);
+		writing = new HashMap<ImageHandle, BufferedImage>();
+		reading = new HashMap<ImageHandle, FutureTask<BufferedImage>>();
+	}
+
+	/**
+	 * Adds an image to the store, unless an image with the same content is
+	 * stored already.
+	 * The image must not be modified afterwards.
+	 * @param img The image; if it's not a <code>BufferedImage</code>, it must
+	 * be loaded completely
+	 * @return The <code>ImageHandle</code> of the image, or <code>null</code> if
+	 * <code>img</code> is <code>null</code> or has no size
+	 */
+	public ImageHandle put (Image img)
+	{
+		BufferedImage buf = toBufferedImage(img);
+		if (buf == null) return null;
+		String hash = hash(buf); // outside of the lock, since it reads every pixel
+		synchronized (this) {
+			ImageHandle h = handles.get(hash);
+			if (h == null) {
+				h = new ImageHandle(this, hash, buf.getWidth(), buf.getHeight());
+				handles.put(hash, h);
+			}
+			if (!images.containsKey(h)) {
+				images.put(h, buf);
+				bytes += size(buf);
+				trim(h);
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * Returns the number of distinct images in the store.
+	 * @return The number of handles
+	 */
+	public synchronized int size () { return handles.size(); }
+
+	/**
+	 * Returns the amount of memory used by the images that are kept in memory.
+	 * @return The size of their pixels, in bytes
+	 */
+	public synchronized long getBytes () { return bytes; }
+
+	BufferedImage get (ImageHandle h)
+	{
+		FutureTask<BufferedImage> task;
+		boolean first = false;
+		synchronized (this) {
+			BufferedImage img = images.get(h);
+			if (img == null) img = writing.get(h);
+			if (img != null || h.spill == null) return img;
+			task = reading.get(h);
+			if (task == null) {
+				final File f = h.spill;
+				task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+					public BufferedImage call () throws IOException { return ImageIO.read(f); }
+				});
+				reading.put(h, task);
+				first = true;
+			}
+		}
+		if (first) task.run();
+		BufferedImage img = null;
+		try {
+			img = task.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			ex.getCause().printStackTrace();
+		}
+		if (!first) return img;
+		synchronized (this) {
+			reading.remove(h);
+			if (img == null) return null;
+			if (images.containsKey(h)) return images.get(h); // added again meanwhile
+			images.put(h, img);
+			bytes += size(img);
+			trim(h);
+			return img;
+		}
+	}
+
+	/**
+	 * Drops the least recently used images from memory until the budget is met.
+	 * Images that haven't been written to disk yet are kept in memory until
+	 * the background thread has written them.
+	 * @param keep The image that has just been used, which isn't dropped
+	 */
+	private void trim (ImageHandle keep)
+	{
+		Iterator<Map.Entry<ImageHandle, BufferedImage>> it = images.entrySet().iterator();
+		final List<ImageHandle> spill = new ArrayList<ImageHandle>();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<ImageHandle, BufferedImage> e = it.next();
+			ImageHandle h = e.getKey();
+			if (h == keep) continue;
+			if (h.spill == null && !writing.containsKey(h)) {
+				writing.put(h, e.getValue());
+				spill.add(h);
+			}
+			MipmapCache.getShared().remove(e.getValue());
+			bytes -= size(e.getValue());
+			it.remove();
+		}
+		if (spill.isEmpty()) return;
+		writer.execute(new Runnable() {
+			public void run () { spill(spill); }
+		});
+	}
+
+	/**
+	 * Writes images to temporary files, outside of the lock.
+	 * An image that can't be written is put back into memory.
+	 */
+	private void spill (List<ImageHandle> spill)
+	{
+		for (ImageHandle h : spill) {
+			BufferedImage img;
+			synchronized (this) {
+				img = writing.get(h);
+			}
+			File f = null;
+			try {
+				f = File.createTempFile("gfxeditor-", ".png");
+				f.deleteOnExit();
+				if (!ImageIO.write(img, "png", f))
+					throw new IOException("No PNG writer available");
+			} catch (IOException ex) {
+				ex.printStackTrace();
+				f = null;
+			}
+			synchronized (this) {
+				writing.remove(h);
+				if (f != null)
+					h.spill = f;
+				else if (!images.containsKey(h)) {
+					images.put(h, img);
+					bytes += size(img);
+				}
+			}
+		}
+	}
+
+	private static BufferedImage toBufferedImage (Image img)
+	{
+		if (img == null || img instanceof BufferedImage) return (BufferedImage)img;
+		int w = img.getWidth(null), h = img.getHeight(null);
+		if (w <= 0 || h <= 0) return null;
+		BufferedImage buf = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = buf.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return buf;
+	}
+
+	private static String hash (BufferedImage img)
+	{
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		int w = img.getWidth(), h = img.getHeight();
+		int[] row = new int[w];
+		byte[] bytes = new byte[4 * w];
+		md.update(new byte[] {(byte)(w >> 24), (byte)(w >> 16), (byte)(w >> 8), (byte)w,
+		                      (byte)(h >> 24), (byte)(h >> 16), (byte)(h >> 8), (byte)h});
+		for (int y = 0; y < h; y++) {
+			img.getRGB(0, y, w, 1, row, 0, w);
+			for (int x = 0; x < w; x++) {
+				bytes[4*x] = (byte)(row[x] >> 24);
+				bytes[4*x+1] = (byte)(row[x] >> 16);
+				bytes[4*x+2] = (byte)(row[x] >> 8);
+				bytes[4*x+3] = (byte)row[x];
+			}
+			md.update(bytes);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest())
+			sb.append(String.format("%02x", b & 0xFF));
+		return sb.toString();
+	}
+
+	private static long size (BufferedImage img)
+	{
+		return (long)img.getColorModel().getPixelSize() * img.getWidth() * img.getHeight() / 8;
+	}
+}
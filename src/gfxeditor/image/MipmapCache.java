@@ -0,0 +1,159 @@
+package gfxeditor.image;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores scaled-down versions of images, so that an image doesn't have to be
+ * scaled from its full resolution every time it's painted.
+ *
+ * <p>For every image, there is a pyramid of levels: level 0 is the image
+ * itself, and each further level is half as wide and high as the previous one.
+ * When an image is to be painted at a certain size, the smallest level that
+ * is still at least as large is used, so that it only needs to be scaled down
+ * by less than half. Levels are created when they're needed for the first time.
+ * <br>The least recently used levels are dropped when the levels of all images
+ * take up more memory than the budget allows.
+ * <br>The cache can be used by several threads at once.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.shapes.ImageAdapter
+ */
+public class MipmapCache
+{
+	private static final MipmapCache shared = new MipmapCache(32L << 20);
+
+	private final long maxBytes;
+	private final Map<Key, BufferedImage> levels;
+	private long bytes;
+
+	private static final class Key
+	{
+		final Image source;
+		final int level;
+
+		Key (Image source, int level)
+		{
+			this.source = source;
+			this.level = level;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return k.source == source && k.level == level;
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			return System.identityHashCode(source) * 31 + level;
+		}
+	}
+
+	/**
+	 * Returns the cache that is shared by all image shapes.
+	 * @return The shared <code>MipmapCache</code>
+	 */
+	public static MipmapCache getShared () { return shared; }
+
+	/**
+	 * Constructs an empty cache.
+	 * @param maxBytes The maximum amount of memory used by the scaled images
+	 */
+	public MipmapCache (long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		levels = new LinkedHashMap<Key, BufferedImage>(16, 0.75F, true);
+	}
+
+	/**
+	 * Returns the version of an image that is best suited for painting it at
+	 * the given size.
+	 * @param source The image at full resolution
+	 * @param width The width the image is painted with, in device pixels
+	 * @param height The height the image is painted with, in device pixels
+	 * @return The smallest level of the image that is at least as large as
+	 * the given size, or the image itself
+	 */
+	public Image get (Image source, double width, double height)
+	{
+		int w = source.getWidth(null), h = source.getHeight(null);
+		if (w <= 0 || h <= 0) return source; // not loaded yet
+		int level = 0;
+		while ((w >> (level + 1)) >= Math.max(width, 1) &&
+		       (h >> (level + 1)) >= Math.max(height, 1))
+			level++;
+		return level == 0 ? source : get(source, level);
+	}
+
+	/**
+	 * Drops all levels of an image.
+	 * @param source The image at full resolution
+	 */
+	public synchronized void remove (Image source)
+	{
+		Iterator<Map.Entry<Key, BufferedImage>> it = levels.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, BufferedImage> e = it.next();
+			if (e.getKey().source == source) {
+				bytes -= size(e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops all levels of all images.
+	 */
+	public synchronized void clear ()
+	{
+		levels.clear();
+		bytes = 0;
+	}
+
+	private BufferedImage get (Image source, int level)
+	{
+		Key key = new Key(source, level);
+		synchronized (this) {
+			BufferedImage img = levels.get(key);
+			if (img != null) return img;
+		}
+		// scaled outside of the lock; another thread may do the same meanwhile
+		Image larger = level == 1 ? source : get(source, level - 1);
+		int w = Math.max(1, source.getWidth(null) >> level),
+		    h = Math.max(1, source.getHeight(null) >> level);
+		BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = img.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+		                   RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(larger, 0, 0, w, h, null);
+		g.dispose();
+		synchronized (this) {
+			BufferedImage old = levels.put(key, img);
+			if (old != null) bytes -= size(old);
+			bytes += size(img);
+			Iterator<BufferedImage> it = levels.values().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				BufferedImage eldest = it.next();
+				if (eldest == img) continue;
+				bytes -= size(eldest);
+				it.remove();
+			}
+		}
+		return img;
+	}
+
+	private static long size (BufferedImage img)
+	{
+		return 4L * img.getWidth() * img.getHeight();
+	}
+}
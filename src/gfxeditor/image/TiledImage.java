@@ -0,0 +1,306 @@
+package gfxeditor.image;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * An image file that is decoded piecewise, so that images which are too large
+ * to be held in memory as a whole can be painted.
+ *
+ * <p>Only the parts of the image that are visible are decoded, and only at
+ * the resolution that is needed: the image is divided into tiles for every
+ * level of a pyramid, where each level is subsampled by a factor of 2 more
+ * than the previous one. Tiles are read with an <code>ImageReader</code>,
+ * using the source region and subsampling of an <code>ImageReadParam</code>.
+ * <br>Decoded tiles of all images are kept in a shared cache whose size is
+ * limited; the least recently used tiles are dropped first.
+ * <br>An image can be painted by several threads at once.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see AsyncImage#getTiles()
+ */
+public class TiledImage
+{
+	/** The width and height of a tile, in pixels of its level. */
+	public static final int TILE_SIZE = 256;
+
+	private static final long CACHE_BYTES = 64L << 20;
+	private static final Map<Key, BufferedImage> tiles =
+		new LinkedHashMap<Key, BufferedImage>(16, 0.75F, true);
+	private static long bytes;
+
+	private final URL source;
+	private final ImageInputStream input;
+	private final ImageReader reader;
+	private final int width, height;
+	private volatile boolean failed;
+
+	private static final class Key
+	{
+		final TiledImage image;
+		final int level, col, row;
+
+		Key (TiledImage image, int level, int col, int row)
+		{
+			this.image = image;
+			this.level = level;
+			this.col = col;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return k.image == image && k.level == level && k.col == col && k.row == row;
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			return ((System.identityHashCode(image) * 31 + level) * 31 + col) * 31 + row;
+		}
+	}
+
+	/**
+	 * Opens an image file and reads its dimensions, without decoding any pixels.
+	 * @param source The location of the image file
+	 * @throws IOException If the file can't be opened or there is no reader
+	 * for its format
+	 */
+	public TiledImage (URL source) throws IOException
+	{
+		this.source = source;
+		input = ImageIO.createImageInputStream(open(source));
+		if (input == null)
+			throw new IOException("Can't open " + source);
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("Unsupported image format: " + source);
+		}
+		reader = readers.next();
+		reader.setInput(input, true, true);
+		width = reader.getWidth(0);
+		height = reader.getHeight(0);
+	}
+
+	/**
+	 * Returns the location of the image file.
+	 * @return The <code>URL</code> the image is read from
+	 */
+	public URL getSource () { return source; }
+
+	/**
+	 * Returns the width of the image at full resolution.
+	 * @return The width in pixels
+	 */
+	public int getWidth () { return width; }
+
+	/**
+	 * Returns the height of the image at full resolution.
+	 * @return The height in pixels
+	 */
+	public int getHeight () { return height; }
+
+	/**
+	 * Returns the number of the level whose size is at least the given size,
+	 * but as small as possible.
+	 * @param width The required width, in pixels
+	 * @param height The required height, in pixels
+	 * @return 0 for the full resolution, 1 for half the resolution, and so on
+	 */
+	public int getLevel (double width, double height)
+	{
+		int level = 0;
+		while ((this.width >> (level + 1)) >= Math.max(width, 1) &&
+		       (this.height >> (level + 1)) >= Math.max(height, 1))
+			level++;
+		return level;
+	}
+
+	/**
+	 * Decodes the whole image at the resolution of a level.
+	 * The result isn't cached.
+	 * @param level The level of the pyramid
+	 * @return A <code>BufferedImage</code> object
+	 * @throws IOException If the image can't be decoded
+	 * @see #getLevel(double, double)
+	 */
+	public BufferedImage read (int level) throws IOException
+	{
+		return read(new Rectangle(0, 0, width, height), level);
+	}
+
+	/**
+	 * Decodes the whole image scaled to the given size, e.g., for a thumbnail.
+	 * The image is decoded at the smallest level that is at least as large,
+	 * and then scaled down the rest of the way. The result isn't cached.
+	 * @param width The width of the result, in pixels
+	 * @param height The height of the result, in pixels
+	 * @return A <code>BufferedImage</code> object
+	 * @throws IOException If the image can't be decoded
+	 */
+	public BufferedImage read (int width, int height) throws IOException
+	{
+		BufferedImage img = read(getLevel(width, height));
+		if (img.getWidth() == width && img.getHeight() == height) return img;
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaled.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+		                   RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, 0, 0, width, height, null);
+		g.dispose();
+		return scaled;
+	}
+
+	/**
+	 * Paints the visible part of the image so that it fills a rectangle.
+	 * The tiles are decoded at the level that suits the transformation of the
+	 * graphics context, unless they are cached already.
+	 * @param g The graphics context
+	 * @param x The x coordinate of the rectangle
+	 * @param y The y coordinate of the rectangle
+	 * @param w The width of the rectangle, which may be negative
+	 * @param h The height of the rectangle, which may be negative
+	 */
+	public void paint (Graphics2D g, int x, int y, int w, int h)
+	{
+		if (failed || w == 0 || h == 0) return;
+		AffineTransform t = g.getTransform();
+		int level = getLevel(Math.abs(w) * Math.hypot(t.getScaleX(), t.getShearY()),
+		                     Math.abs(h) * Math.hypot(t.getShearX(), t.getScaleY()));
+		double sx = (double)w / width, sy = (double)h / height; // per image pixel
+		int[] cols = {0, width}, rows = {0, height};
+		Rectangle clip = g.getClipBounds();
+		if (clip != null) {
+			cols = span((clip.x - x) / sx, (clip.x + clip.width - x) / sx, width);
+			rows = span((clip.y - y) / sy, (clip.y + clip.height - y) / sy, height);
+			if (cols == null || rows == null) return;
+		}
+		int span = TILE_SIZE << level;
+		for (int row = rows[0] / span; row <= (rows[1] - 1) / span; row++)
+			for (int col = cols[0] / span; col <= (cols[1] - 1) / span; col++) {
+				BufferedImage tile = getTile(level, col, row);
+				if (tile == null) return;
+				AffineTransform at = new AffineTransform();
+				at.translate(x + col * span * sx, y + row * span * sy);
+				at.scale(sx * (1 << level), sy * (1 << level));
+				g.drawImage(tile, at, null);
+			}
+	}
+
+	/**
+	 * Drops the cached tiles of this image and closes the file.
+	 * The image can't be painted anymore afterwards.
+	 */
+	public void close ()
+	{
+		failed = true;
+		synchronized (tiles) {
+			Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Key, BufferedImage> e = it.next();
+				if (e.getKey().image == this) {
+					bytes -= size(e.getValue());
+					it.remove();
+				}
+			}
+		}
+		synchronized (reader) {
+			reader.dispose();
+			try {
+				input.close();
+			} catch (IOException ex) { }
+		}
+	}
+
+	private BufferedImage getTile (int level, int col, int row)
+	{
+		Key key = new Key(this, level, col, row);
+		synchronized (tiles) {
+			BufferedImage tile = tiles.get(key);
+			if (tile != null) return tile;
+		}
+		int span = TILE_SIZE << level;
+		Rectangle region = new Rectangle(col * span, row * span,
+		                                 Math.min(span, width - col * span),
+		                                 Math.min(span, height - row * span));
+		BufferedImage tile;
+		try {
+			tile = read(region, level);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			failed = true;
+			return null;
+		}
+		synchronized (tiles) {
+			BufferedImage old = tiles.put(key, tile);
+			if (old != null) bytes -= size(old);
+			bytes += size(tile);
+			Iterator<BufferedImage> it = tiles.values().iterator();
+			while (bytes > CACHE_BYTES && it.hasNext()) {
+				BufferedImage eldest = it.next();
+				if (eldest == tile) continue;
+				bytes -= size(eldest);
+				it.remove();
+			}
+		}
+		return tile;
+	}
+
+	private BufferedImage read (Rectangle region, int level) throws IOException
+	{
+		synchronized (reader) {
+			if (failed) throw new IOException("Image is closed: " + source);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(region);
+			param.setSourceSubsampling(1 << level, 1 << level, 0, 0);
+			return reader.read(0, param);
+		}
+	}
+
+	/**
+	 * Converts a range of image coordinates to a range of whole pixels
+	 * within the image.
+	 * @return The first and the last pixel plus 1, or <code>null</code> if the
+	 * range is outside of the image
+	 */
+	private static int[] span (double a, double b, int size)
+	{
+		int from = Math.max(0, (int)Math.floor(Math.min(a, b))),
+		    to = Math.min(size, (int)Math.ceil(Math.max(a, b)));
+		return from < to ? new int[] {from, to} : null;
+	}
+
+	private static Object open (URL url) throws IOException
+	{
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return new File(url.toURI()); // random access without a cache
+			} catch (URISyntaxException ex) { }
+		}
+		return url.openStream();
+	}
+
+	private static long size (BufferedImage img)
+	{
+		return (long)img.getColorModel().getPixelSize() * img.getWidth() * img.getHeight() / 8;
+	}
+}
@@ -0,0 +1,392 @@
+package gfxeditor.index;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index that stores objects along with their bounding rectangles.
+ *
+ * <p>The tree is an R-tree with quadratic node splitting, as described by
+ * A. Guttman. It is used to find all objects whose bounds intersect a given
+ * rectangle or contain a given point without examining every object.
+ * <br>Objects are compared by identity, i.e., <code>equals(Object)</code> is
+ * never called. Each object can only be stored once.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @param <T> The type of the stored objects
+ */
+public class RTree<T>
+{
+	private static final int MAX_ENTRIES = 16, MIN_ENTRIES = 6;
+
+	private Node root;
+	private Map<T, Node> entries;
+
+	/**
+	 * A node of the tree. Leaf entries are nodes as well; they store the
+	 * object in <code>item</code> and have no children.
+	 */
+	private static final class Node
+	{
+		double minX, minY, maxX, maxY;
+		Node parent;
+		Node[] children;
+		int count;
+		boolean leaf; // children are entries
+		Object item;
+
+		Node (boolean leaf)
+		{
+			this.leaf = leaf;
+			children = new Node[MAX_ENTRIES + 1];
+			empty();
+		}
+
+		Node (Object item, Rectangle2D r)
+		{
+			this.item = item;
+			setBounds(r);
+		}
+
+		void setBounds (Rectangle2D r)
+		{
+			minX = r.getMinX(); minY = r.getMinY();
+			maxX = r.getMaxX(); maxY = r.getMaxY();
+		}
+
+		void empty ()
+		{
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+		}
+
+		void include (Node n)
+		{
+			if (n.minX < minX) minX = n.minX;
+			if (n.minY < minY) minY = n.minY;
+			if (n.maxX > maxX) maxX = n.maxX;
+			if (n.maxY > maxY) maxY = n.maxY;
+		}
+
+		void recalculate ()
+		{
+			empty();
+			for (int i = 0; i < count; i++)
+				include(children[i]);
+		}
+
+		void add (Node n)
+		{
+			children[count++] = n;
+			n.parent = this;
+			include(n);
+		}
+
+		void remove (Node n)
+		{
+			for (int i = 0; i < count; i++) {
+				if (children[i] == n) {
+					children[i] = children[--count];
+					children[count] = null;
+					n.parent = null;
+					return;
+				}
+			}
+		}
+
+		boolean contains (Node n)
+		{
+			return n.minX >= minX && n.maxX <= maxX && n.minY >= minY && n.maxY <= maxY;
+		}
+
+		boolean intersects (double x1, double y1, double x2, double y2)
+		{
+			return minX <= x2 && maxX >= x1 && minY <= y2 && maxY >= y1;
+		}
+
+		double area ()
+		{
+			return (maxX - minX) * (maxY - minY);
+		}
+
+		double enlargement (Node n)
+		{
+			return (Math.max(maxX, n.maxX) - Math.min(minX, n.minX)) *
+			       (Math.max(maxY, n.maxY) - Math.min(minY, n.minY)) - area();
+		}
+	}
+
+	/**
+	 * Constructs an empty R-tree.
+	 */
+	public RTree ()
+	{
+		clear();
+	}
+
+	/**
+	 * Removes all objects from this tree.
+	 */
+	public void clear ()
+	{
+		root = new Node(true);
+		entries = new IdentityHashMap<T, Node>();
+	}
+
+	/**
+	 * Returns the number of objects stored in this tree.
+	 * @return The number of objects
+	 */
+	public int size () { return entries.size(); }
+
+	/**
+	 * Checks if an object is stored in this tree.
+	 * @param item The object to look for
+	 * @return <code>true</code> if the object has been inserted
+	 */
+	public boolean contains (T item)
+	{
+		return entries.containsKey(item);
+	}
+
+	/**
+	 * Inserts an object into this tree.
+	 * If the object is already stored, only its bounds are updated.
+	 * @param item The object to be inserted
+	 * @param bounds The bounding rectangle of the object
+	 */
+	public void insert (T item, Rectangle2D bounds)
+	{
+		if (item == null || bounds == null) return;
+		if (entries.containsKey(item)) {
+			update(item, bounds);
+			return;
+		}
+		Node e = new Node(item, bounds);
+		entries.put(item, e);
+		insert(e);
+	}
+
+	/**
+	 * Removes an object from this tree.
+	 * @param item The object to be removed
+	 * @return <code>true</code> if the object was stored in this tree
+	 */
+	public boolean remove (T item)
+	{
+		Node e = entries.remove(item);
+		if (e == null) return false;
+		Node leaf = e.parent;
+		leaf.remove(e);
+		condense(leaf);
+		return true;
+	}
+
+	/**
+	 * Changes the bounds of an object that is stored in this tree.
+	 * If the new bounds still fit into the object's leaf node, the tree is only
+	 * adjusted along the path to the root; otherwise the object is reinserted.
+	 * @param item The object that has been moved or resized
+	 * @param bounds The new bounding rectangle of the object
+	 */
+	public void update (T item, Rectangle2D bounds)
+	{
+		Node e = entries.get(item);
+		if (e == null) {
+			insert(item, bounds);
+			return;
+		}
+		Node leaf = e.parent;
+		e.setBounds(bounds);
+		if (leaf.parent == null || leaf.parent.contains(e)) {
+			for (Node n = leaf; n != null; n = n.parent)
+				n.recalculate();
+		} else {
+			leaf.remove(e);
+			condense(leaf);
+			insert(e);
+		}
+	}
+
+	/**
+	 * Finds all objects whose bounds intersect the given rectangle.
+	 * @param r The area to be searched
+	 * @param result The collection the found objects are added to
+	 */
+	public void search (Rectangle2D r, Collection<? super T> result)
+	{
+		search(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), result);
+	}
+
+	/**
+	 * Finds all objects whose bounds contain the given point.
+	 * @param x The horizontal position of the point
+	 * @param y The vertical position of the point
+	 * @param result The collection the found objects are added to
+	 */
+	public void search (double x, double y, Collection<? super T> result)
+	{
+		search(x, y, x, y, result);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void search (double x1, double y1, double x2, double y2,
+	                     Collection<? super T> result)
+	{
+		if (root.count == 0) return;
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			Node n = stack.remove(stack.size() - 1);
+			for (int i = 0; i < n.count; i++) {
+				Node c = n.children[i];
+				if (!c.intersects(x1, y1, x2, y2)) continue;
+				if (n.leaf)
+					result.add((T)c.item);
+				else
+					stack.add(c);
+			}
+		}
+	}
+
+	private void insert (Node e)
+	{
+		Node n = root;
+		while (!n.leaf) {
+			Node best = null;
+			double bestGrowth = 0, bestArea = 0;
+			for (int i = 0; i < n.count; i++) {
+				Node c = n.children[i];
+				double growth = c.enlargement(e), area = c.area();
+				if (best == null || growth < bestGrowth ||
+				    (growth == bestGrowth && area < bestArea)) {
+					best = c;
+					bestGrowth = growth;
+					bestArea = area;
+				}
+			}
+			n = best;
+		}
+		n.add(e);
+		for (Node p = n.parent; p != null; p = p.parent)
+			p.include(e);
+		while (n != null && n.count > MAX_ENTRIES) {
+			Node sibling = split(n);
+			Node parent = n.parent;
+			if (parent == null) {
+				root = new Node(false);
+				root.add(n);
+				root.add(sibling);
+				break;
+			}
+			parent.add(sibling);
+			n = parent;
+		}
+	}
+
+	/**
+	 * Distributes the children of an overflowing node between the node and
+	 * a new sibling, using the quadratic algorithm.
+	 */
+	private Node split (Node n)
+	{
+		Node[] all = new Node[n.count];
+		System.arraycopy(n.children, 0, all, 0, n.count);
+		int seedA = 0, seedB = 1;
+		double worst = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < all.length; i++) {
+			for (int j = i + 1; j < all.length; j++) {
+				double d = (Math.max(all[i].maxX, all[j].maxX) - Math.min(all[i].minX, all[j].minX)) *
+				           (Math.max(all[i].maxY, all[j].maxY) - Math.min(all[i].minY, all[j].minY)) -
+				           all[i].area() - all[j].area();
+				if (d > worst) {
+					worst = d;
+					seedA = i;
+					seedB = j;
+				}
+			}
+		}
+		Node sibling = new Node(n.leaf);
+		sibling.parent = n.parent;
+		for (int i = 0; i < n.count; i++)
+			n.children[i] = null;
+		n.count = 0;
+		n.empty();
+		n.add(all[seedA]);
+		sibling.add(all[seedB]);
+		all[seedA] = all[seedB] = null;
+
+		int remaining = all.length - 2;
+		while (remaining > 0) {
+			if (n.count + remaining == MIN_ENTRIES || sibling.count + remaining == MIN_ENTRIES) {
+				Node target = n.count < sibling.count ? n : sibling;
+				for (int i = 0; i < all.length; i++)
+					if (all[i] != null) target.add(all[i]);
+				break;
+			}
+			int next = -1;
+			double diff = -1, growthA = 0, growthB = 0;
+			for (int i = 0; i < all.length; i++) {
+				if (all[i] == null) continue;
+				double a = n.enlargement(all[i]), b = sibling.enlargement(all[i]);
+				if (Math.abs(a - b) > diff) {
+					diff = Math.abs(a - b);
+					next = i;
+					growthA = a;
+					growthB = b;
+				}
+			}
+			if (growthA < growthB || (growthA == growthB && n.count <= sibling.count))
+				n.add(all[next]);
+			else
+				sibling.add(all[next]);
+			all[next] = null;
+			remaining--;
+		}
+		return sibling;
+	}
+
+	/**
+	 * Removes underfull nodes on the path from a leaf to the root and
+	 * reinserts their entries.
+	 */
+	private void condense (Node leaf)
+	{
+		List<Node> orphans = new ArrayList<Node>();
+		Node n = leaf;
+		while (n.parent != null) {
+			Node parent = n.parent;
+			if (n.count < MIN_ENTRIES) {
+				parent.remove(n);
+				collectEntries(n, orphans);
+			} else {
+				n.recalculate();
+			}
+			n = parent;
+		}
+		n.recalculate();
+		while (!root.leaf && root.count == 1) {
+			root = root.children[0];
+			root.parent = null;
+		}
+		for (Node e : orphans)
+			insert(e);
+	}
+
+	private static void collectEntries (Node n, List<Node> result)
+	{
+		for (int i = 0; i < n.count; i++) {
+			if (n.leaf) {
+				n.children[i].parent = null;
+				result.add(n.children[i]);
+			} else {
+				collectEntries(n.children[i], result);
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package gfxeditor.index;
+
+import gfxeditor.Shape;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds all pairs of shapes whose bounds overlap, and how this changes over
+ * time.
+ *
+ * <p>The left and right edges of all bounds are kept in a list sorted by
+ * their x coordinate. Sweeping over it, only shapes that overlap
+ * horizontally are compared, which are usually few.
+ * <br>When the shapes move a little between two updates, the list is nearly
+ * sorted already, so it's sorted again by insertion sort in almost linear
+ * time. When shapes have been added, removed or reordered, the list is
+ * rebuilt and sorted by merge sort in <i>O(n log n)</i> time.
+ * <br>Touching edges don't count as overlap.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.Model#addCollisionListener(gfxeditor.event.CollisionListener)
+ */
+public class SweepAndPrune
+{
+	private Shape[] shapes = new Shape[0];
+	private int[] minY = new int[0], maxY = new int[0];
+	// edge: x coordinate << 1 | 1 for left edges; owner: index of the shape << 1 | 1 for left edges
+	private long[] edges = new long[0];
+	private int[] owners = new int[0];
+	private Map<Long, Shape[]> pairs = new HashMap<Long, Shape[]>();
+	private List<Shape[]> started = new ArrayList<Shape[]>(), ended = new ArrayList<Shape[]>();
+
+	/**
+	 * Updates the overlapping pairs after the shapes have moved or changed.
+	 * @param list The shapes, from the bottom-most to the top-most
+	 */
+	public void update (List<Shape> list)
+	{
+		boolean same = list.size() == shapes.length;
+		int n = 0;
+		for (Iterator<Shape> it = list.iterator(); same && it.hasNext(); n++)
+			same = it.next() == shapes[n];
+		if (!same) rebuild(list);
+		for (int i = 0; i < owners.length; i++) {
+			int owner = owners[i];
+			Rectangle r = shapes[owner >> 1].getBounds();
+			boolean left = (owner & 1) != 0;
+			edges[i] = (long)(left ? r.x : r.x + r.width) << 1 | (left ? 1 : 0);
+			if (left) {
+				minY[owner >> 1] = r.y;
+				maxY[owner >> 1] = r.y + r.height;
+			}
+		}
+		if (same)
+			sort();
+		else
+			mergeSort(new long[edges.length], new int[owners.length]);
+		sweep();
+	}
+
+	/**
+	 * Returns the pairs that have started to overlap with the last update.
+	 * @return A list of pairs of shapes, the lower one in the z-order first
+	 */
+	public List<Shape[]> getStarted () { return started; }
+
+	/**
+	 * Returns the pairs that have stopped to overlap with the last update,
+	 * including those of which a shape has been removed.
+	 * @return A list of pairs of shapes, the lower one in the z-order first
+	 */
+	public List<Shape[]> getEnded () { return ended; }
+
+	/**
+	 * Returns the number of pairs that overlap.
+	 * @return The number of overlapping pairs after the last update
+	 */
+	public int getPairCount () { return pairs.size(); }
+
+	private void rebuild (List<Shape> list)
+	{
+		shapes = list.toArray(new Shape[list.size()]);
+		minY = new int[shapes.length];
+		maxY = new int[shapes.length];
+		edges = new long[2 * shapes.length];
+		owners = new int[2 * shapes.length];
+		for (int i = 0; i < shapes.length; i++) {
+			owners[2*i] = i << 1 | 1;
+			owners[2*i+1] = i << 1;
+		}
+	}
+
+	private void sort ()
+	{
+		for (int i = 1; i < edges.length; i++) {
+			long e = edges[i];
+			int o = owners[i], j = i - 1;
+			for (; j >= 0 && edges[j] > e; j--) {
+				edges[j+1] = edges[j];
+				owners[j+1] = owners[j];
+			}
+			edges[j+1] = e;
+			owners[j+1] = o;
+		}
+	}
+
+	/**
+	 * Sorts the edges of a rebuilt list, whose order is unrelated to their
+	 * coordinates, bottom-up by runs of doubling length.
+	 */
+	private void mergeSort (long[] edgeBuf, int[] ownerBuf)
+	{
+		long[] e = edges, f = edgeBuf;
+		int[] o = owners, p = ownerBuf;
+		int n = e.length;
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(lo + width, n), hi = Math.min(lo + 2 * width, n);
+				int i = lo, j = mid;
+				for (int k = lo; k < hi; k++) {
+					if (j >= hi || i < mid && e[i] <= e[j]) {
+						f[k] = e[i];
+						p[k] = o[i++];
+					} else {
+						f[k] = e[j];
+						p[k] = o[j++];
+					}
+				}
+			}
+			long[] t = e; e = f; f = t;
+			int[] q = o; o = p; p = q;
+		}
+		edges = e;
+		owners = o;
+	}
+
+	private void sweep ()
+	{
+		Map<Long, Shape[]> current = new HashMap<Long, Shape[]>();
+		int[] active = new int[shapes.length], slot = new int[shapes.length];
+		int count = 0;
+		for (int owner : owners) {
+			int i = owner >> 1;
+			if ((owner & 1) != 0) {
+				for (int k = 0; k < count; k++) {
+					int j = active[k];
+					if (minY[i] < maxY[j] && minY[j] < maxY[i]) {
+						int a = Math.min(i, j), b = Math.max(i, j);
+						current.put(key(shapes[a], shapes[b]), new Shape[] {shapes[a], shapes[b]});
+					}
+				}
+				slot[i] = count;
+				active[count++] = i;
+			} else {
+				int last = active[--count];
+				active[slot[i]] = last;
+				slot[last] = slot[i];
+			}
+		}
+		started = new ArrayList<Shape[]>();
+		ended = new ArrayList<Shape[]>();
+		for (Map.Entry<Long, Shape[]> e : current.entrySet())
+			if (!pairs.containsKey(e.getKey())) started.add(e.getValue());
+		for (Map.Entry<Long, Shape[]> e : pairs.entrySet())
+			if (!current.containsKey(e.getKey())) ended.add(e.getValue());
+		pairs = current;
+	}
+
+	private static long key (Shape a, Shape b)
+	{
+		int p = a.getId(), q = b.getId();
+		return (long)Math.min(p, q) << 32 | Math.max(p, q) & 0xFFFFFFFFL;
+	}
+}
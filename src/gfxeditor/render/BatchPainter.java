@@ -0,0 +1,198 @@
+package gfxeditor.render;
+
+import gfxeditor.Shape;
+import gfxeditor.Style;
+import gfxeditor.shapes.ImageAdapter;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paints shapes in z-order, combining adjacent shapes that look the same.
+ *
+ * <p>Consecutive shapes with the same style are collected in a run, whose
+ * outlines are appended to a single
+ * <code>Path2D</code>. The whole run is filled and drawn at once, so the
+ * graphics context only changes its paint and stroke once per run.
+ * <br>A shape only joins a run if it doesn't overlap any shape of the run;
+ * otherwise, painting the run at once could paint a border over a shape that
+ * is in front of it. Shapes that don't provide an outline, or whose width or
+ * height is 0, are painted on their own.
+ * <br>Outlines are scaled by an <code>OutlineCache</code>, so they aren't
+ * transformed again in every frame.
+ * <br>Depending on the level of detail, small shapes are painted as a single
+ * pixel or not at all, and their borders or images are omitted.
+ * <br>An instance is bound to one graphics context and mustn't be shared
+ * between threads.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Shape#getOutline()
+ */
+public class BatchPainter
+{
+	// limits the cost of the overlap test
+	private static final int MAX_RUN = 256;
+
+	private final Graphics2D g;
+	private final double zoom;
+	private final OutlineCache outlines;
+	private final LevelOfDetail detail;
+	private final Path2D path;
+	private final List<Rectangle> run;
+	private java.awt.Shape single;
+	private Style style;
+	private Color fill;
+	private boolean bordered, dots;
+
+	/**
+	 * Constructs a painter for the given graphics context that paints every
+	 * shape completely.
+	 * @param g The graphics context where the shapes are to be painted
+	 */
+	public BatchPainter (Graphics2D g)
+	{
+		this(g, new OutlineCache(1), LevelOfDetail.FULL);
+	}
+
+	/**
+	 * Constructs a painter for the given graphics context that scales the shapes
+	 * and reduces the detail of small shapes.
+	 * The graphics context must not be scaled; the outlines are scaled instead.
+	 * @param g The graphics context where the shapes are to be painted
+	 * @param outlines The scaled outlines of the zoom level
+	 * @param detail The level of detail
+	 */
+	public BatchPainter (Graphics2D g, OutlineCache outlines, LevelOfDetail detail)
+	{
+		this.g = g;
+		this.outlines = outlines;
+		this.detail = detail;
+		zoom = outlines.getZoom();
+		path = new Path2D.Float();
+		run = new ArrayList<Rectangle>();
+	}
+
+	/**
+	 * Paints a shape, or adds it to the current run.
+	 * Shapes must be passed from the bottom-most to the top-most one, and
+	 * <code>flush()</code> must be called after the last one.
+	 * @param s The shape to be painted
+	 * @param bounds The bounds of the shape
+	 * @see Shape#getBounds()
+	 */
+	public void paint (Shape s, Rectangle bounds)
+	{
+		double size = Math.max(Math.abs(s.getWidth()), Math.abs(s.getHeight())) * zoom;
+		if (size < detail.getHideSize()) return;
+		Style st = s.getStyle();
+		if (size < detail.getDotSize()) {
+			Color c = s.isFilled() && s.getColor() != null ? s.getColor() : st.getBorderColor();
+			if (c == null) return;
+			Rectangle2D dot = new Rectangle2D.Double((s.getX() + s.getWidth()/2.0) * zoom - 0.5,
+			                                         (s.getY() + s.getHeight()/2.0) * zoom - 0.5,
+			                                         1, 1);
+			add(dot, bounds, st, c, false, true);
+			return;
+		}
+		if (s instanceof ImageAdapter) {
+			ImageAdapter a = (ImageAdapter)s;
+			paint(a.getBox(), bounds);
+			if (size >= detail.getImageSize()) {
+				flush();
+				AffineTransform t = scale();
+				a.paintImage(g);
+				g.setTransform(t);
+			}
+			return;
+		}
+		java.awt.Shape outline = s.getOutline();
+		// a flat outline isn't stroked the same way when it's transformed or
+		// part of a path
+		if (outline == null || s.getWidth() == 0 || s.getHeight() == 0) {
+			if (size < detail.getBorderSize() && s.getBorderWidth() > 0) {
+				if (outline != null) return; // a flat shape only consists of its border
+				s = s.freeze(s.getStyle().withBorderWidth(0));
+			}
+			flush();
+			AffineTransform t = scale();
+			s.paint(g);
+			g.setTransform(t);
+			return;
+		}
+		Color f = s.isFilled() ? s.getColor() : null;
+		boolean b = st.getBorderWidth() > 0 && st.getBorderColor() != null &&
+		            size >= detail.getBorderSize();
+		if (f == null && !b) return;
+		outline = outlines.transform(outline);
+		add(outline, bounds, st, f, b, false);
+	}
+
+	/**
+	 * Paints the current run.
+	 */
+	public void flush ()
+	{
+		if (run.isEmpty()) return;
+		java.awt.Shape outline = single != null ? single : path;
+		if (fill != null) {
+			g.setPaint(fill);
+			g.fill(outline);
+		}
+		if (bordered) {
+			g.setStroke(outlines.getStroke(style));
+			g.setPaint(style.getBorderColor());
+			g.draw(outline);
+		}
+		path.reset();
+		run.clear();
+		single = null;
+	}
+
+	/**
+	 * Scales the graphics context by the zoom level.
+	 * @return The previous transformation
+	 */
+	private AffineTransform scale ()
+	{
+		AffineTransform t = g.getTransform();
+		if (zoom != 1) g.scale(zoom, zoom);
+		return t;
+	}
+
+	private void add (java.awt.Shape outline, Rectangle bounds, Style st, Color f,
+	                  boolean b, boolean dot)
+	{
+		if (!run.isEmpty() && !joins(st, f, b, dot, bounds))
+			flush();
+		if (run.isEmpty()) {
+			style = st;
+			fill = f;
+			bordered = b;
+			dots = dot;
+			single = outline;
+		} else {
+			if (single != null) {
+				path.append(single, false);
+				single = null;
+			}
+			path.append(outline, false);
+		}
+		run.add(bounds);
+	}
+
+	private boolean joins (Style st, Color f, boolean b, boolean dot, Rectangle bounds)
+	{
+		if (run.size() >= MAX_RUN || st != style || b != bordered || dot != dots ||
+		    (f == null ? fill != null : !f.equals(fill)))
+			return false;
+		for (Rectangle r : run)
+			if (r.intersects(bounds)) return false;
+		return true;
+	}
+}
@@ -0,0 +1,110 @@
+package gfxeditor.render;
+
+/**
+ * Determines how much detail is painted, depending on the size of a shape
+ * on the screen.
+ *
+ * <p>Sizes are measured in device pixels, i.e., after zooming, using the larger
+ * one of a shape's width and height. Shapes that are smaller than
+ * <code>hideSize</code> aren't painted at all, and shapes that are smaller than
+ * <code>dotSize</code> are painted as a single pixel. Borders are omitted
+ * below <code>borderSize</code>, and images below <code>imageSize</code>.
+ * <br>Objects of this class are immutable.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see BatchPainter
+ */
+public final class LevelOfDetail
+{
+	/**
+	 * Paints every shape completely, with anti-aliasing.
+	 */
+	public static final LevelOfDetail FULL = new LevelOfDetail(true, 0, 0, 0, 0);
+
+	/**
+	 * Reduces the detail of shapes that are only a few pixels large.
+	 */
+	public static final LevelOfDetail DEFAULT = new LevelOfDetail(true, 0.5, 2, 4, 8);
+
+	private final boolean antialiasing;
+	private final double hideSize, dotSize, borderSize, imageSize;
+
+	/**
+	 * Constructs a level of detail.
+	 * @param antialiasing <code>true</code> if shapes are painted with anti-aliasing
+	 * @param hideSize The size below which shapes aren't painted
+	 * @param dotSize The size below which shapes are painted as a single pixel
+	 * @param borderSize The size below which borders are omitted
+	 * @param imageSize The size below which images are omitted
+	 */
+	public LevelOfDetail (boolean antialiasing, double hideSize, double dotSize,
+	                      double borderSize, double imageSize)
+	{
+		this.antialiasing = antialiasing;
+		this.hideSize = hideSize;
+		this.dotSize = dotSize;
+		this.borderSize = borderSize;
+		this.imageSize = imageSize;
+	}
+
+	/**
+	 * Returns a level of detail like this one, with or without anti-aliasing.
+	 * @param on <code>true</code> if shapes are to be painted with anti-aliasing
+	 * @return A <code>LevelOfDetail</code> object
+	 */
+	public LevelOfDetail withAntialiasing (boolean on)
+	{
+		return on == antialiasing ? this :
+		       new LevelOfDetail(on, hideSize, dotSize, borderSize, imageSize);
+	}
+
+	/**
+	 * Checks if shapes are painted with anti-aliasing.
+	 * @return <code>true</code> if anti-aliasing is turned on
+	 */
+	public boolean isAntialiasing () { return antialiasing; }
+
+	/**
+	 * Returns the size below which shapes aren't painted.
+	 * @return The size, in pixels
+	 */
+	public double getHideSize () { return hideSize; }
+
+	/**
+	 * Returns the size below which shapes are painted as a single pixel.
+	 * @return The size, in pixels
+	 */
+	public double getDotSize () { return dotSize; }
+
+	/**
+	 * Returns the size below which borders are omitted.
+	 * @return The size, in pixels
+	 */
+	public double getBorderSize () { return borderSize; }
+
+	/**
+	 * Returns the size below which images are omitted.
+	 * @return The size, in pixels
+	 */
+	public double getImageSize () { return imageSize; }
+
+	@Override
+	public boolean equals (Object o)
+	{
+		if (!(o instanceof LevelOfDetail)) return false;
+		LevelOfDetail d = (LevelOfDetail)o;
+		return d.antialiasing == antialiasing && d.hideSize == hideSize &&
+		       d.dotSize == dotSize && d.borderSize == borderSize &&
+		       d.imageSize == imageSize;
+	}
+
+	@Override
+	public int hashCode ()
+	{
+		long h = Double.doubleToLongBits(hideSize) ^ 31 * Double.doubleToLongBits(dotSize) ^
+		         961 * Double.doubleToLongBits(borderSize) ^
+		         29791 * Double.doubleToLongBits(imageSize);
+		return (int)(h ^ (h >>> 32)) ^ (antialiasing ? 1 : 0);
+	}
+}
@@ -0,0 +1,90 @@
+package gfxeditor.render;
+
+import gfxeditor.Style;
+import java.awt.BasicStroke;
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores the outlines of shapes scaled to a zoom level, as well as the
+ * strokes their borders are drawn with.
+ *
+ * <p>Since shapes replace their geometric representation whenever they're
+ * moved or resized, an outline can be reused until its shape changes.
+ * At a zoom level of 1, outlines and strokes are returned as they are.
+ * <br>The cache is cleared when it gets too large. It can be used by several
+ * threads at once.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.Shape#getOutline()
+ */
+public class OutlineCache
+{
+	private static final int MAX_OUTLINES = 1 << 16;
+
+	private final double zoom;
+	private final AffineTransform scale;
+	private final ConcurrentMap<java.awt.Shape, java.awt.Shape> outlines;
+	private final ConcurrentMap<Style, BasicStroke> strokes;
+
+	/**
+	 * Constructs an empty cache for the given zoom level.
+	 * @param zoom The scale factor, 1 meaning 100%
+	 */
+	public OutlineCache (double zoom)
+	{
+		this.zoom = zoom;
+		scale = AffineTransform.getScaleInstance(zoom, zoom);
+		outlines = new ConcurrentHashMap<java.awt.Shape, java.awt.Shape>();
+		strokes = new ConcurrentHashMap<Style, BasicStroke>();
+	}
+
+	/**
+	 * Returns the zoom level of this cache.
+	 * @return The scale factor, 1 meaning 100%
+	 */
+	public double getZoom () { return zoom; }
+
+	/**
+	 * Returns an outline scaled by the zoom level.
+	 * @param outline The outline of a shape, in model coordinates
+	 * @return The scaled outline, which must not be modified
+	 */
+	public java.awt.Shape transform (java.awt.Shape outline)
+	{
+		if (zoom == 1) return outline;
+		java.awt.Shape t = outlines.get(outline);
+		if (t == null) {
+			if (outlines.size() >= MAX_OUTLINES)
+				outlines.clear();
+			t = scale.createTransformedShape(outline);
+			outlines.put(outline, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Returns the stroke of a style scaled by the zoom level.
+	 * @param style The style of a shape
+	 * @return A <code>BasicStroke</code> object
+	 * @see Style#getStroke()
+	 */
+	public BasicStroke getStroke (Style style)
+	{
+		if (zoom == 1) return style.getStroke();
+		BasicStroke s = strokes.get(style);
+		if (s == null) {
+			BasicStroke b = style.getStroke();
+			float[] dash = b.getDashArray();
+			if (dash != null)
+				for (int i = 0; i < dash.length; i++) dash[i] *= zoom;
+			s = new BasicStroke(b.getLineWidth() * (float)zoom, b.getEndCap(),
+			                    b.getLineJoin(), b.getMiterLimit(), dash,
+			                    b.getDashPhase() * (float)zoom);
+			strokes.put(style, s);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,221 @@
+package gfxeditor.render;
+
+import gfxeditor.Shape;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders shapes into an image using several threads.
+ *
+ * <p>The image is divided into horizontal bands, which are painted in parallel
+ * on a fork-join pool. Each band only paints the shapes that overlap it, in
+ * the order of the given list, so the z-order is kept. Since the bands don't
+ * overlap, they can be painted independently of each other.
+ * <br>Within a band, shapes are painted by a <code>BatchPainter</code>.
+ * <br>Shapes are only read while they're rendered; they must not be changed
+ * until rendering is finished.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see TileCache
+ */
+public class ParallelRenderer
+{
+	/**
+	 * The height of the bands, in pixels. Areas that aren't higher than this
+	 * are painted by a single thread.
+	 */
+	public static final int BAND_HEIGHT = 64;
+
+	// below this number of shapes, painting is faster than forking tasks
+	private static final int MIN_SHAPES = 32;
+
+	// number of zoom levels whose outlines are kept
+	private static final int ZOOM_LEVELS = 4;
+
+	private final ForkJoinPool pool;
+	private final Map<Double, OutlineCache> outlines;
+
+	/**
+	 * Constructs a renderer that uses as many threads as there are processors.
+	 */
+	public ParallelRenderer ()
+	{
+		this(new ForkJoinPool());
+	}
+
+	/**
+	 * Constructs a renderer that uses the threads of the given pool.
+	 * @param pool The <code>ForkJoinPool</code> that executes the bands
+	 */
+	public ParallelRenderer (ForkJoinPool pool)
+	{
+		this.pool = pool;
+		outlines = new LinkedHashMap<Double, OutlineCache>(8, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<Double, OutlineCache> eldest)
+			{
+				return size() > ZOOM_LEVELS;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache of scaled outlines for a zoom level.
+	 * The caches of the most recently used zoom levels are kept.
+	 * @param zoom The scale factor, 1 meaning 100%
+	 * @return An <code>OutlineCache</code> object
+	 */
+	public synchronized OutlineCache getOutlines (double zoom)
+	{
+		OutlineCache cache = outlines.get(zoom);
+		if (cache == null) {
+			cache = new OutlineCache(zoom);
+			outlines.put(zoom, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Renders an area of the drawing into a new image.
+	 * This is meant for exporting the drawing, at any size.
+	 * @param shapes The shapes to be painted, from the bottom-most to the top-most
+	 * @param area The area of the drawing to be rendered
+	 * @param zoom The scale factor, 1 meaning 100%
+	 * @param background The background color, or <code>null</code> for a
+	 * transparent image
+	 * @return A <code>BufferedImage</code> of the area
+	 */
+	public BufferedImage render (List<Shape> shapes, Rectangle2D area, double zoom,
+	                             Color background)
+	{
+		int w = Math.max(1, (int)Math.ceil(area.getWidth() * zoom)),
+		    h = Math.max(1, (int)Math.ceil(area.getHeight() * zoom));
+		BufferedImage img = new BufferedImage(w, h, background == null ?
+		                                      BufferedImage.TYPE_INT_ARGB_PRE :
+		                                      BufferedImage.TYPE_INT_RGB);
+		if (background != null) {
+			Graphics2D g = img.createGraphics();
+			g.setColor(background);
+			g.fillRect(0, 0, w, h);
+			g.dispose();
+		}
+		render(shapes, img, area.getX(), area.getY(), zoom);
+		return img;
+	}
+
+	/**
+	 * Paints shapes over the contents of an image.
+	 * @param shapes The shapes to be painted, from the bottom-most to the top-most
+	 * @param target The image to paint into
+	 * @param x The horizontal position of the drawing that is painted at the
+	 * left edge of the image
+	 * @param y The vertical position of the drawing that is painted at the
+	 * top edge of the image
+	 * @param zoom The scale factor, 1 meaning 100%
+	 */
+	public void render (List<Shape> shapes, BufferedImage target, double x, double y,
+	                    double zoom)
+	{
+		render(shapes, target, x, y, zoom, LevelOfDetail.FULL);
+	}
+
+	/**
+	 * Paints shapes over the contents of an image, reducing the detail of
+	 * small shapes.
+	 * @param shapes The shapes to be painted, from the bottom-most to the top-most
+	 * @param target The image to paint into
+	 * @param x The horizontal position of the drawing that is painted at the
+	 * left edge of the image
+	 * @param y The vertical position of the drawing that is painted at the
+	 * top edge of the image
+	 * @param zoom The scale factor, 1 meaning 100%
+	 * @param detail The level of detail
+	 */
+	public void render (List<Shape> shapes, BufferedImage target, double x, double y,
+	                    double zoom, LevelOfDetail detail)
+	{
+		if (shapes.isEmpty()) return;
+		Rectangle[] bounds = new Rectangle[shapes.size()];
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = shapes.get(i).getBounds();
+		Band band = new Band(shapes, bounds, target, x, y, getOutlines(zoom), detail,
+		                     0, target.getHeight());
+		if (shapes.size() < MIN_SHAPES || target.getHeight() <= BAND_HEIGHT)
+			band.paint();
+		else
+			pool.invoke(band);
+	}
+
+	@SuppressWarnings("serial")
+	private static final class Band extends RecursiveAction
+	{
+		private final List<Shape> shapes;
+		private final Rectangle[] bounds;
+		private final BufferedImage target;
+		private final double x, y;
+		private final OutlineCache outlines;
+		private final LevelOfDetail detail;
+		private final int top, bottom;
+
+		Band (List<Shape> shapes, Rectangle[] bounds, BufferedImage target, double x,
+		      double y, OutlineCache outlines, LevelOfDetail detail, int top, int bottom)
+		{
+			this.shapes = shapes;
+			this.bounds = bounds;
+			this.target = target;
+			this.x = x;
+			this.y = y;
+			this.outlines = outlines;
+			this.detail = detail;
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected void compute ()
+		{
+			if (bottom - top <= BAND_HEIGHT) {
+				paint();
+				return;
+			}
+			int bands = (bottom - top + BAND_HEIGHT - 1) / BAND_HEIGHT,
+			    middle = top + bands / 2 * BAND_HEIGHT;
+			invokeAll(new Band(shapes, bounds, target, x, y, outlines, detail, top, middle),
+			          new Band(shapes, bounds, target, x, y, outlines, detail, middle, bottom));
+		}
+
+		/**
+		 * Paints the shapes that overlap this band into its own part of the image.
+		 */
+		void paint ()
+		{
+			BufferedImage part = target.getSubimage(0, top, target.getWidth(), bottom - top);
+			double zoom = outlines.getZoom();
+			Rectangle2D area = new Rectangle2D.Double(x, y + top / zoom,
+			                                          part.getWidth() / zoom,
+			                                          part.getHeight() / zoom);
+			Graphics2D g = part.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, detail.isAntialiasing() ?
+			                   RenderingHints.VALUE_ANTIALIAS_ON :
+			                   RenderingHints.VALUE_ANTIALIAS_OFF);
+			g.translate(-x * zoom, -y * zoom - top);
+			BatchPainter painter = new BatchPainter(g, outlines, detail);
+			for (int i = 0; i < bounds.length; i++)
+				if (bounds[i].intersects(area)) painter.paint(shapes.get(i), bounds[i]);
+			painter.flush();
+			g.dispose();
+		}
+	}
+}
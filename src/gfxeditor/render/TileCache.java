@@ -0,0 +1,199 @@
+package gfxeditor.render;
+
+import gfxeditor.Model;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders the shapes of a model through a grid of cached raster tiles.
+ *
+ * <p>Each tile is an image of a square area of the drawing. A tile is only
+ * rendered when it's painted for the first time, and it's invalidated as soon
+ * as a shape that overlaps it changes. The least recently used tiles are
+ * dropped when the cache holds more tiles than its memory budget allows.
+ * <br>Tiles are identified by their position in the grid, the zoom level and
+ * the level of detail, so tiles rendered at another zoom level or quality can
+ * be reused later.
+ * <br>Missing tiles are rendered by a <code>ParallelRenderer</code>, from the
+ * frozen shapes of the model's current snapshot.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see gfxeditor.Model#snapshotIn(Rectangle2D)
+ */
+public class TileCache
+{
+	/**
+	 * The width and height of a tile, in pixels.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	private final Model model;
+	private final ParallelRenderer renderer;
+	private final Map<Key, BufferedImage> tiles;
+	private double zoom;
+	private LevelOfDetail detail;
+
+	private static final class Key
+	{
+		final double zoom;
+		final LevelOfDetail detail;
+		final int col, row;
+
+		Key (double zoom, LevelOfDetail detail, int col, int row)
+		{
+			this.zoom = zoom;
+			this.detail = detail;
+			this.col = col;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return k.col == col && k.row == row && k.zoom == zoom && k.detail.equals(detail);
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			long z = Double.doubleToLongBits(zoom);
+			return ((31 * col + row) * 31 + (int)(z ^ (z >>> 32))) * 31 + detail.hashCode();
+		}
+	}
+
+	/**
+	 * Constructs a tile cache for the given model.
+	 * @param model The model whose shapes are rendered
+	 * @param renderer The renderer that paints the tiles
+	 * @param maxBytes The maximum amount of memory used by the cached tiles
+	 */
+	public TileCache (Model model, ParallelRenderer renderer, long maxBytes)
+	{
+		final int capacity = (int)Math.max(1, maxBytes / (4L * TILE_SIZE * TILE_SIZE));
+		this.model = model;
+		this.renderer = renderer;
+		zoom = 1;
+		detail = LevelOfDetail.DEFAULT;
+		tiles = new LinkedHashMap<Key, BufferedImage>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<Key, BufferedImage> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the zoom level used for rendering new tiles.
+	 * @return The scale factor, 1 meaning 100%
+	 */
+	public double getZoom () { return zoom; }
+
+	/**
+	 * Sets the zoom level used for rendering new tiles.
+	 * Tiles of other zoom levels are kept in the cache.
+	 * @param zoom The scale factor, 1 meaning 100%
+	 */
+	public void setZoom (double zoom) { this.zoom = zoom; }
+
+	/**
+	 * Returns the level of detail used for rendering new tiles.
+	 * @return A <code>LevelOfDetail</code> object
+	 */
+	public LevelOfDetail getDetail () { return detail; }
+
+	/**
+	 * Sets the level of detail used for rendering new tiles.
+	 * Tiles of other levels of detail are kept in the cache.
+	 * @param detail A <code>LevelOfDetail</code> object
+	 */
+	public void setDetail (LevelOfDetail detail) { this.detail = detail; }
+
+	/**
+	 * Paints all tiles that intersect the given area.
+	 * Missing tiles are rendered first.
+	 * @param g The graphics context, in device coordinates
+	 * @param clip The area to be painted, in device coordinates
+	 */
+	public void paint (Graphics2D g, Rectangle clip)
+	{
+		int col0 = floorDiv(clip.x), col1 = floorDiv(clip.x + clip.width - 1),
+		    row0 = floorDiv(clip.y), row1 = floorDiv(clip.y + clip.height - 1);
+		for (int row = row0; row <= row1; row++)
+			for (int col = col0; col <= col1; col++)
+				g.drawImage(getTile(col, row), col * TILE_SIZE, row * TILE_SIZE, null);
+	}
+
+	/**
+	 * Returns the image of a tile at the current zoom level and level of detail,
+	 * rendering it if it isn't cached.
+	 * @param col The column of the tile
+	 * @param row The row of the tile
+	 * @return A <code>BufferedImage</code> with transparent background
+	 */
+	public BufferedImage getTile (int col, int row)
+	{
+		Key key = new Key(zoom, detail, col, row);
+		BufferedImage tile = tiles.get(key);
+		if (tile == null) {
+			tile = render(col, row);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Drops all tiles that overlap the given area of the drawing, at every
+	 * zoom level and level of detail.
+	 * @param r The changed area, in model coordinates
+	 */
+	public void invalidate (Rectangle2D r)
+	{
+		Iterator<Key> it = tiles.keySet().iterator();
+		while (it.hasNext()) {
+			if (r.intersects(area(it.next())))
+				it.remove();
+		}
+	}
+
+	/**
+	 * Drops all tiles.
+	 */
+	public void invalidateAll ()
+	{
+		tiles.clear();
+	}
+
+	private BufferedImage render (int col, int row)
+	{
+		BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE,
+		                                       BufferedImage.TYPE_INT_ARGB_PRE);
+		Rectangle2D area = area(new Key(zoom, detail, col, row));
+		renderer.render(model.snapshotIn(area), tile, area.getX(), area.getY(), zoom, detail);
+		return tile;
+	}
+
+	/**
+	 * Returns the area of the drawing covered by a tile.
+	 */
+	private static Rectangle2D area (Key k)
+	{
+		double size = TILE_SIZE / k.zoom;
+		return new Rectangle2D.Double(k.col * size, k.row * size, size, size);
+	}
+
+	private static int floorDiv (int x)
+	{
+		return x >= 0 ? x / TILE_SIZE : -((-x + TILE_SIZE - 1) / TILE_SIZE);
+	}
+}
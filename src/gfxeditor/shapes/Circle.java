@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -49,13 +48,18 @@ public class Circle extends Shape
 	 * Returns the <code>filled</code> property of this circle.
 	 * @return <code>true</code> if the shape is filled when painted
 	 */
+	@Override
 	public boolean isFilled () { return filled; }
 
 	/**
 	 * Sets the <code>filled</code> property of this circle.
 	 * @param filled <code>true</code> if the shape is to be filled when painted
 	 */
-	public void setFilled (boolean filled) { this.filled = filled; }
+	public void setFilled (boolean filled)
+	{
+		checkMutable();
+		this.filled = filled;
+	}
 
 	/**
 	 * Constructs a filled circle.
@@ -81,7 +85,7 @@ public class Circle extends Shape
 			g.fill(circle);
 		}
 		if (getBorderWidth() > 0) {
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.setPaint(getBorderColor());
 			g.draw(circle);
 		}
@@ -92,6 +96,7 @@ public class Circle extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		int d = Math.min(width, height);
 		circle = new Ellipse2D.Float(getX(), getY(), d, d);
 	}
@@ -104,12 +109,19 @@ public class Circle extends Shape
 	{
 		Circle c = new Circle(getX(), getY(), getColor());
 		c.circle = circle;
-		c.setBorderWidth(getBorderWidth());
-		c.setBorderColor(getBorderColor());
+		c.setStyle(getStyle());
 		c.filled = filled;
 		return c;
 	}
 
+	/**
+	 * Returns the geometric representation of this circle.
+	 * @return The internal <code>Ellipse2D</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return circle; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Circle" and the internal number of the circle
@@ -1,21 +1,95 @@
 package gfxeditor.shapes;
 
 import gfxeditor.Shape;
+import gfxeditor.Style;
+import gfxeditor.image.AsyncImage;
+import gfxeditor.image.HitMask;
+import gfxeditor.image.ImageHandle;
+import gfxeditor.image.ImageStore;
+import gfxeditor.image.MipmapCache;
+import gfxeditor.image.TiledImage;
 import gfxeditor.visitors.Visitor;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
 
 // Extension 1
 public class ImageAdapter extends Shape
 {
 	private Shape box;
-	private Image image;
+	private ImageHandle image;
+	private AsyncImage source;
 
-	public Image getImage () { return image; }
+	private static final Stroke PLACEHOLDER_STROKE = new BasicStroke(1);
 
-	public void setImage (Image img) { image = img; }
+	/**
+	 * Returns the image, or <code>null</code> if it hasn't been decoded yet.
+	 * @return An <code>Image</code> object
+	 */
+	public Image getImage ()
+	{
+		if (image == null && source != null) return source.getImage();
+		return image != null ? image.getImage() : null;
+	}
+
+	/**
+	 * Returns the handle of the image in the shared <code>ImageStore</code>.
+	 * @return An <code>ImageHandle</code>, or <code>null</code> if the image
+	 * hasn't been decoded yet
+	 * @since 2.1
+	 */
+	public ImageHandle getHandle ()
+	{
+		if (image == null && source != null) return source.getHandle();
+		return image;
+	}
+
+	/**
+	 * Checks if the image is still being decoded in the background.
+	 * @return <code>true</code> if a placeholder is painted instead of the image
+	 * @since 2.1
+	 */
+	public boolean isLoading ()
+	{
+		return image == null && source != null && source.isLoading();
+	}
+
+	/**
+	 * Registers a task that is run on the event dispatch thread as soon as the
+	 * image has been decoded; immediately if it's not being decoded anymore.
+	 * @param r The task to be run
+	 * @see AsyncImage#whenLoaded(Runnable)
+	 * @since 2.1
+	 */
+	public void whenLoaded (Runnable r)
+	{
+		if (isLoading())
+			source.whenLoaded(r);
+		else
+			r.run();
+	}
+
+	/**
+	 * Returns the shape that is painted underneath the image.
+	 * @return The adapted <code>Shape</code> object
+	 * @since 2.1
+	 */
+	public Shape getBox () { return box; }
+
+	/**
+	 * Sets the image. Its pixels are kept in the shared <code>ImageStore</code>,
+	 * together with those of identical images.
+	 * @param img The image, which must not be modified afterwards
+	 */
+	public void setImage (Image img)
+	{
+		checkMutable();
+		image = ImageStore.getShared().put(img);
+	}
 
 	public int getNumber () { return box.getNumber(); }
 
@@ -26,14 +100,84 @@ public class ImageAdapter extends Shape
 		setImage(img);
 	}
 
+	/**
+	 * Constructs an image shape whose image is decoded in the background.
+	 * @param box The shape that is painted underneath the image
+	 * @param source The image being decoded
+	 * @since 2.1
+	 */
+	public ImageAdapter (Shape box, AsyncImage source)
+	{
+		this(box, (Image)null);
+		this.source = source;
+	}
+
+	/**
+	 * Constructs an image shape for an image in the shared <code>ImageStore</code>.
+	 * @param box The shape that is painted underneath the image
+	 * @param image The handle of the image
+	 * @since 2.1
+	 */
+	public ImageAdapter (Shape box, ImageHandle image)
+	{
+		this(box, (Image)null);
+		this.image = image;
+	}
+
 	public Object clone ()
 	{
-		return new ImageAdapter((Shape)box.clone(), image);
+		ImageAdapter c = new ImageAdapter((Shape)box.clone(), image);
+		c.source = source;
+		return c;
 	}
 
+	/**
+	 * Returns a frozen copy of this shape, whose box is frozen as well.
+	 * @param style The style of the copy's box
+	 * @return A copy that isn't affected by later changes of this shape
+	 * @since 2.1
+	 */
+	@Override
+	public Shape freeze (Style style)
+	{
+		ImageAdapter c = (ImageAdapter)super.freeze(style);
+		c.box = box.freeze(style);
+		return c;
+	}
+
+	/**
+	 * Returns a copy of this shape with a copy of its box, which shares the
+	 * image.
+	 * @return A copy that isn't affected by later changes of this shape
+	 * @since 2.1
+	 */
+	@Override
+	public Shape copy ()
+	{
+		ImageAdapter c = (ImageAdapter)super.copy();
+		c.box = box.copy();
+		return c;
+	}
+
+	/**
+	 * Checks if a point hits the shape.
+	 * If the box isn't filled, only the opaque pixels of the image count,
+	 * which are looked up in the image's <code>HitMask</code>.
+	 * @param p The point
+	 * @return <code>true</code> if the box is hit where it's painted, or the
+	 * image is hit where it's opaque
+	 */
 	public boolean contains (Point p)
 	{
-		return box.contains(p);
+		if (!box.contains(p)) return false;
+		if (box.isFilled()) return true;
+		ImageHandle h = getHandle();
+		if (h == null) return isLoading(); // the placeholder is hit
+		int w = getWidth(), ht = getHeight();
+		HitMask m = h.getHitMask(Math.abs(w), Math.abs(ht));
+		if (m == null) return true;
+		return m.contains((int)Math.floor((p.x + 0.5 - getX()) * m.getWidth() / w),
+		                  (int)Math.floor((p.y + 0.5 - getY()) * m.getHeight() / ht));
 	}
 
 	public int getHeight ()
@@ -48,13 +192,60 @@ public class ImageAdapter extends Shape
 
 	public boolean isInvisible ()
 	{
-		return box.isInvisible() || image == null;
+		return box.isInvisible() || getImage() == null && !isLoading();
 	}
 
+	/**
+	 * Paints the box and the image on top of it.
+	 * The image is taken from the shared <code>MipmapCache</code> at the
+	 * resolution that is needed for the current transformation. If that is more
+	 * than a large image has been decoded with, the visible part is painted
+	 * from its <code>TiledImage</code> instead.
+	 * <br>While the image is being decoded, a crossed-out frame is painted instead.
+	 * @param g The graphics context where the shape is to be painted
+	 */
 	public void paint (Graphics2D g)
 	{
 		box.paint(g);
-		g.drawImage(image, getX(), getY(), getWidth(), getHeight(), null);
+		paintImage(g);
+	}
+
+	/**
+	 * Paints only the image, or the placeholder while it's being decoded,
+	 * without the box.
+	 * @param g The graphics context where the image is to be painted
+	 * @see #paint(Graphics2D)
+	 * @since 2.1
+	 */
+	public void paintImage (Graphics2D g)
+	{
+		Image full = getImage();
+		if (full == null) {
+			if (isLoading()) paintPlaceholder(g);
+			return;
+		}
+		AffineTransform t = g.getTransform();
+		double w = Math.abs(getWidth()) * Math.hypot(t.getScaleX(), t.getShearY()),
+		       h = Math.abs(getHeight()) * Math.hypot(t.getShearX(), t.getScaleY());
+		TiledImage tiles = source != null ? source.getTiles() : null;
+		if (tiles != null && (w > full.getWidth(null) || h > full.getHeight(null))) {
+			tiles.paint(g, getX(), getY(), getWidth(), getHeight());
+			return;
+		}
+		Image img = MipmapCache.getShared().get(full, w, h);
+		g.drawImage(img, getX(), getY(), getWidth(), getHeight(), null);
+	}
+
+	private void paintPlaceholder (Graphics2D g)
+	{
+		int x = getX(), y = getY(), w = getWidth(), h = getHeight();
+		Stroke stroke = g.getStroke();
+		g.setStroke(PLACEHOLDER_STROKE);
+		g.setColor(Color.GRAY);
+		g.drawRect(Math.min(x, x + w), Math.min(y, y + h), Math.abs(w), Math.abs(h));
+		g.drawLine(x, y, x + w, y + h);
+		g.drawLine(x + w, y, x, y + h);
+		g.setStroke(stroke);
 	}
 
 	public void setSize (int width, int height)
@@ -80,12 +271,30 @@ public class ImageAdapter extends Shape
 		return box.getBorderWidth();
 	}
 
+	@Override
+	public boolean isFilled ()
+	{
+		return box.isFilled();
+	}
+
 	@Override
 	public Color getColor ()
 	{
 		return box.getColor();
 	}
 
+	@Override
+	public Style getStyle ()
+	{
+		return box.getStyle();
+	}
+
+	@Override
+	public void setStyle (Style style)
+	{
+		box.setStyle(style);
+	}
+
 	@Override
 	public int getX ()
 	{
@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -79,7 +78,7 @@ public class Line extends Shape
 	{
 		Line l = new Line(getX(), getY(), getColor());
 		l.line = line;
-		l.setBorderWidth(getBorderWidth());
+		l.setStyle(getStyle());
 		return l;
 	}
 
@@ -90,6 +89,7 @@ public class Line extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		line = new Line2D.Float(getX(), getY(), getX()+width, getY()+height);
 	}
 
@@ -101,11 +101,19 @@ public class Line extends Shape
 	{
 		if (getBorderWidth() > 0) {
 			g.setPaint(getBorderColor());
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.draw(line);
 		}
 	}
 
+	/**
+	 * Returns the geometric representation of this line.
+	 * @return The internal <code>Line2D</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return line; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Line" and the internal number of the line
@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -48,13 +47,18 @@ public class Oval extends Shape
 	 * Returns the <code>filled</code> property of this oval.
 	 * @return <code>true</code> if the shape is filled when painted
 	 */
+	@Override
 	public boolean isFilled () { return filled; }
 
 	/**
 	 * Sets the <code>filled</code> property of this oval.
 	 * @param filled <code>true</code> if the shape is to be filled when painted
 	 */
-	public void setFilled (boolean filled) { this.filled = filled; }
+	public void setFilled (boolean filled)
+	{
+		checkMutable();
+		this.filled = filled;
+	}
 
 	/**
 	 * Constructs a filled oval.
@@ -80,7 +84,7 @@ public class Oval extends Shape
 			g.fill(oval);
 		}
 		if (getBorderWidth() > 0) {
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.setPaint(getBorderColor());
 			g.draw(oval);
 		}
@@ -93,6 +97,7 @@ public class Oval extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		oval = new Ellipse2D.Float(getX(), getY(), width, height);
 	}
 
@@ -104,12 +109,19 @@ public class Oval extends Shape
 	{
 		Oval c = new Oval(getX(), getY(), getColor());
 		c.oval = oval;
-		c.setBorderWidth(getBorderWidth());
-		c.setBorderColor(getBorderColor());
+		c.setStyle(getStyle());
 		c.filled = filled;
 		return c;
 	}
 
+	/**
+	 * Returns the geometric representation of this oval.
+	 * @return The internal <code>Ellipse2D</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return oval; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Oval" and the internal number of the oval
@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -48,13 +47,18 @@ public class Rectangle extends Shape
 	 * Returns the <code>filled</code> property of this rectangle.
 	 * @return <code>true</code> if the shape is filled when painted
 	 */
+	@Override
 	public boolean isFilled () { return filled; }
 
 	/**
 	 * Sets the <code>filled</code> property of this rectangle.
 	 * @param filled <code>true</code> if the shape is to be filled when painted
 	 */
-	public void setFilled (boolean filled) { this.filled = filled; }
+	public void setFilled (boolean filled)
+	{
+		checkMutable();
+		this.filled = filled;
+	}
 
 	/**
 	 * Constructs a filled rectangle.
@@ -77,8 +81,7 @@ public class Rectangle extends Shape
 	{
 		Rectangle r = new Rectangle(getX(), getY(), getColor());
 		r.rectangle = rectangle;
-		r.setBorderColor(getBorderColor());
-		r.setBorderWidth(getBorderWidth());
+		r.setStyle(getStyle());
 		r.filled = filled;
 		return r;
 	}
@@ -90,6 +93,7 @@ public class Rectangle extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		rectangle = new Rectangle2D.Float(getX(), getY(), width, height);
 	}
 
@@ -104,12 +108,20 @@ public class Rectangle extends Shape
 			g.fill(rectangle);
 		}
 		if (getBorderWidth() > 0) {
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.setPaint(getBorderColor());
 			g.draw(rectangle);
 		}
 	}
 
+	/**
+	 * Returns the geometric representation of this rectangle.
+	 * @return The internal <code>Rectangle2D</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return rectangle; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Rectangle" and the internal number of the rectangle
@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -49,13 +48,18 @@ public class Square extends Shape
 	 * Returns the <code>filled</code> property of this square.
 	 * @return <code>true</code> if the shape is filled when painted
 	 */
+	@Override
 	public boolean isFilled () { return filled; }
 
 	/**
 	 * Sets the <code>filled</code> property of this square.
 	 * @param filled <code>true</code> if the shape is to be filled when painted
 	 */
-	public void setFilled (boolean filled) { this.filled = filled; }
+	public void setFilled (boolean filled)
+	{
+		checkMutable();
+		this.filled = filled;
+	}
 
 	/**
 	 * Constructs a filled square.
@@ -78,8 +82,7 @@ public class Square extends Shape
 	{
 		Square r = new Square(getX(), getY(), getColor());
 		r.square = square;
-		r.setBorderColor(getBorderColor());
-		r.setBorderWidth(getBorderWidth());
+		r.setStyle(getStyle());
 		r.filled = filled;
 		return r;
 	}
@@ -89,6 +92,7 @@ public class Square extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		int l = Math.min(width, height);
 		square = new Rectangle2D.Float(getX(), getY(), l, l);
 	}
@@ -104,12 +108,20 @@ public class Square extends Shape
 			g.fill(square);
 		}
 		if (getBorderWidth() > 0) {
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.setPaint(getBorderColor());
 			g.draw(square);
 		}
 	}
 
+	/**
+	 * Returns the geometric representation of this square.
+	 * @return The internal <code>Rectangle2D</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return square; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Square" and the internal number of the square
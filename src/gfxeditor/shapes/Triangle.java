@@ -2,7 +2,6 @@ package gfxeditor.shapes;
 
 import gfxeditor.Shape;
 import gfxeditor.visitors.Visitor;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
@@ -59,13 +58,18 @@ public class Triangle extends Shape
 	 * Returns the <code>filled</code> property of this triangle.
 	 * @return <code>true</code> if the shape is filled when painted
 	 */
+	@Override
 	public boolean isFilled () { return filled; }
 
 	/**
 	 * Sets the <code>filled</code> property of this triangle.
 	 * @param filled <code>true</code> if the shape is to be filled when painted
 	 */
-	public void setFilled (boolean filled) { this.filled = filled; }
+	public void setFilled (boolean filled)
+	{
+		checkMutable();
+		this.filled = filled;
+	}
 
 	/**
 	 * Constructs a filled triangle.
@@ -89,8 +93,7 @@ public class Triangle extends Shape
 	{
 		Triangle t = new Triangle(getX(), getY(), getColor());
 		t.triangle = triangle;
-		t.setBorderColor(getBorderColor());
-		t.setBorderWidth(getBorderWidth());
+		t.setStyle(getStyle());
 		t.filled = filled;
 		return t;
 	}
@@ -103,6 +106,7 @@ public class Triangle extends Shape
 	 */
 	public void setSize (int width, int height)
 	{
+		checkMutable();
 		triangle = new Polygon(new int[] {getX(), getX()+width, getX()+width/2},
 		                       new int[] {getY()+height, getY()+height, getY()}, 3);
 	}
@@ -118,12 +122,20 @@ public class Triangle extends Shape
 			g.fill(triangle);
 		}
 		if (getBorderWidth() > 0) {
-			g.setStroke(new BasicStroke(getBorderWidth()));
+			g.setStroke(getStyle().getStroke());
 			g.setPaint(getBorderColor());
 			g.draw(triangle);
 		}
 	}
 
+	/**
+	 * Returns the geometric representation of this triangle.
+	 * @return The internal <code>Polygon</code> object
+	 * @since 2.1
+	 */
+	@Override
+	public java.awt.Shape getOutline () { return triangle; }
+
 	/**
 	 * Returns the <code>String</code> representation of this shape.
 	 * @return "Triangle" and the internal number of the triangle
@@ -0,0 +1,183 @@
+package gfxeditor.timeline;
+
+import gfxeditor.Model;
+import gfxeditor.Shape;
+import gfxeditor.render.ParallelRenderer;
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders the frames of a timeline and writes them as a sequence of PNG files.
+ * No window is needed, so this also works in a headless environment.
+ *
+ * <p>Frames are rendered and encoded in parallel, one per thread, and only
+ * as many frames as there are threads are in memory at the same time.
+ * The shapes that have keyframes are painted through copies, one set per
+ * thread, which are reused for every frame; the other shapes are painted as
+ * they are.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Timeline
+ */
+public class FrameExporter
+{
+	private final ParallelRenderer renderer;
+	private final int threads;
+
+	/**
+	 * Constructs an exporter that uses one thread per processor.
+	 */
+	public FrameExporter ()
+	{
+		this(new ParallelRenderer(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs an exporter.
+	 * @param renderer The renderer that paints the frames
+	 * @param threads The number of frames rendered at the same time
+	 */
+	public FrameExporter (ParallelRenderer renderer, int threads)
+	{
+		this.renderer = renderer;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Renders all frames of a timeline into PNG files named <i>prefix</i>
+	 * followed by the five-digit number of the frame.
+	 * The shapes are taken from the current snapshot of a model, so the model
+	 * may be edited while the frames are exported.
+	 * This method must be called by the thread that edits the model.
+	 * @param model The model whose shapes are rendered
+	 * @param timeline The keyframes of the shapes; it's copied, so it may be
+	 * changed afterwards
+	 * @param area The area of the drawing that is rendered
+	 * @param zoom The scale factor, 1 meaning 100%
+	 * @param background The background color, or <code>null</code> for
+	 * transparent frames
+	 * @param dir The directory the files are written to
+	 * @param prefix The beginning of the file names
+	 * @throws IOException If a file can't be written
+	 * @throws InterruptedException If the calling thread is interrupted
+	 * @see gfxeditor.Model#getSnapshot()
+	 */
+	public void export (Model model, Timeline timeline, Rectangle2D area, double zoom,
+	                    Color background, File dir, String prefix)
+		throws IOException, InterruptedException
+	{
+		export(model.getSnapshot(), timeline, area, zoom, background, dir, prefix);
+	}
+
+	/**
+	 * Renders all frames of a timeline into PNG files named <i>prefix</i>
+	 * followed by the five-digit number of the frame.
+	 * The shapes must not be changed until this method returns; pass the
+	 * snapshot of a model to go on editing it in the meantime.
+	 * If a frame fails, no more frames are started, and the first exception
+	 * or error is thrown once the running frames have finished.
+	 * @param shapes The shapes, from the bottom-most to the top-most
+	 * @see gfxeditor.Model#getSnapshot()
+	 * @param timeline The keyframes of the shapes; it's copied, so it may be
+	 * changed afterwards
+	 * @param area The area of the drawing that is rendered
+	 * @param zoom The scale factor, 1 meaning 100%
+	 * @param background The background color, or <code>null</code> for
+	 * transparent frames
+	 * @param dir The directory the files are written to
+	 * @param prefix The beginning of the file names
+	 * @throws IOException If a file can't be written
+	 * @throws InterruptedException If the calling thread is interrupted
+	 */
+	public void export (List<Shape> shapes, Timeline timeline, final Rectangle2D area,
+	                    final double zoom, final Color background, final File dir,
+	                    final String prefix)
+		throws IOException, InterruptedException
+	{
+		final Shape[] base = shapes.toArray(new Shape[shapes.size()]);
+		final Timeline keys = new Timeline(timeline);
+		final BlockingQueue<Map<Shape, Shape>> copies =
+			new ArrayBlockingQueue<Map<Shape, Shape>>(threads);
+		for (int i = 0; i < threads; i++) {
+			Map<Shape, Shape> set = new IdentityHashMap<Shape, Shape>();
+			for (Shape s : base)
+				if (keys.isAnimated(s)) set.put(s, s.copy());
+			copies.add(set);
+		}
+		final Semaphore inFlight = new Semaphore(threads);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (int f = 0; f < keys.getFrameCount() && failure.get() == null; f++) {
+				inFlight.acquire();
+				final int frame = f;
+				pool.execute(new Runnable() {
+					public void run ()
+					{
+						try {
+							Map<Shape, Shape> set = copies.take();
+							BufferedImage img;
+							try {
+								img = renderer.render(frame(base, set, keys, frame), area,
+								                      zoom, background);
+							} finally {
+								copies.add(set);
+							}
+							File file = new File(dir, String.format("%s%05d.png", prefix, frame));
+							if (!ImageIO.write(img, "png", file))
+								throw new IOException("No PNG writer available");
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						} catch (Throwable ex) {
+							failure.compareAndSet(null, ex);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		Throwable ex = failure.get();
+		if (ex instanceof IOException) throw (IOException)ex;
+		if (ex instanceof RuntimeException) throw (RuntimeException)ex;
+		if (ex instanceof Error) throw (Error)ex;
+		if (ex != null) throw new IOException(ex);
+	}
+
+	// the shapes of a frame, with the copies of the animated ones in their state
+	private static List<Shape> frame (Shape[] base, Map<Shape, Shape> copies,
+	                                  Timeline keys, int frame)
+	{
+		List<Shape> shapes = new ArrayList<Shape>(base.length);
+		for (Shape s : base) {
+			Shape c = copies.get(s);
+			if (c != null) {
+				c.setStyle(s.getStyle());
+				c.setColor(s.getColor());
+				keys.getState(s, frame).applyTo(c);
+				s = c;
+			}
+			shapes.add(s);
+		}
+		return shapes;
+	}
+}
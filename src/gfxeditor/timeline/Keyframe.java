@@ -0,0 +1,131 @@
+package gfxeditor.timeline;
+
+import gfxeditor.Shape;
+import java.awt.Color;
+import java.awt.Point;
+
+/**
+ * The position, size and color of a shape at a certain frame.
+ * Keyframes are immutable.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Timeline
+ */
+public final class Keyframe
+{
+	private final int frame;
+	private final int x, y, width, height;
+	private final Color color;
+
+	/**
+	 * Constructs a keyframe.
+	 * @param frame The number of the frame, starting at 0
+	 * @param x The horizontal position
+	 * @param y The vertical position
+	 * @param width The width, which may be negative
+	 * @param height The height, which may be negative
+	 * @param color The fill color
+	 */
+	public Keyframe (int frame, int x, int y, int width, int height, Color color)
+	{
+		if (frame < 0) throw new IllegalArgumentException("Negative frame: " + frame);
+		this.frame = frame;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.color = color;
+	}
+
+	/**
+	 * Constructs a keyframe with the current position, size and color of a shape.
+	 * @param s The shape
+	 * @param frame The number of the frame, starting at 0
+	 * @return A <code>Keyframe</code> object
+	 */
+	public static Keyframe of (Shape s, int frame)
+	{
+		return new Keyframe(frame, s.getX(), s.getY(), s.getWidth(), s.getHeight(),
+		                    s.getColor());
+	}
+
+	/**
+	 * Returns the frame this keyframe belongs to.
+	 * @return The number of the frame, starting at 0
+	 */
+	public int getFrame () { return frame; }
+
+	/**
+	 * Returns the horizontal position.
+	 * @return The x coordinate of the shape
+	 */
+	public int getX () { return x; }
+
+	/**
+	 * Returns the vertical position.
+	 * @return The y coordinate of the shape
+	 */
+	public int getY () { return y; }
+
+	/**
+	 * Returns the width.
+	 * @return The width of the shape, which may be negative
+	 */
+	public int getWidth () { return width; }
+
+	/**
+	 * Returns the height.
+	 * @return The height of the shape, which may be negative
+	 */
+	public int getHeight () { return height; }
+
+	/**
+	 * Returns the fill color.
+	 * @return The <code>Color</code> of the shape
+	 */
+	public Color getColor () { return color; }
+
+	/**
+	 * Computes the state between this keyframe and a later one by linear
+	 * interpolation of all values, including the color channels.
+	 * @param next The following keyframe
+	 * @param frame A frame between the two keyframes
+	 * @return A <code>Keyframe</code> for the given frame
+	 */
+	public Keyframe interpolate (Keyframe next, int frame)
+	{
+		if (next.frame == this.frame) return next;
+		double t = (double)(frame - this.frame) / (next.frame - this.frame);
+		return new Keyframe(frame, mix(x, next.x, t), mix(y, next.y, t),
+		                    mix(width, next.width, t), mix(height, next.height, t),
+		                    mix(color, next.color, t));
+	}
+
+	/**
+	 * Moves and resizes a shape and sets its fill color according to this
+	 * keyframe.
+	 * @param s The shape to be changed
+	 */
+	public void applyTo (Shape s)
+	{
+		if (color != null && !color.equals(s.getColor()))
+			s.setColor(color);
+		if (s.getX() != x || s.getY() != y)
+			s.setPosition(new Point(x, y));
+		if (s.getWidth() != width || s.getHeight() != height)
+			s.setSize(width, height);
+	}
+
+	private static int mix (int a, int b, double t)
+	{
+		return (int)Math.round(a + (b - a) * t);
+	}
+
+	private static Color mix (Color a, Color b, double t)
+	{
+		if (a == null || b == null) return t < 1 ? a : b;
+		return new Color(mix(a.getRed(), b.getRed(), t), mix(a.getGreen(), b.getGreen(), t),
+		                 mix(a.getBlue(), b.getBlue(), t), mix(a.getAlpha(), b.getAlpha(), t));
+	}
+}
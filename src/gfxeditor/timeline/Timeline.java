@@ -0,0 +1,127 @@
+package gfxeditor.timeline;
+
+import gfxeditor.Shape;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sequence of frames in which shapes move, change their size and their
+ * color according to keyframes.
+ *
+ * <p>Every shape can have its own track of keyframes, identified by the id of
+ * the shape; therefore, only shapes that have been added to a model can have
+ * keyframes. Between two keyframes, the state of a shape is interpolated
+ * linearly; before the first and after the last keyframe, it stays the same.
+ * Shapes without keyframes don't change.
+ * <br>A timeline isn't thread-safe; <code>FrameExporter</code> works on a copy.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see FrameExporter
+ */
+public class Timeline
+{
+	private final int frameCount;
+	private final Map<Integer, TreeMap<Integer, Keyframe>> tracks;
+
+	/**
+	 * Constructs a timeline without keyframes.
+	 * @param frameCount The number of frames
+	 */
+	public Timeline (int frameCount)
+	{
+		if (frameCount < 1) throw new IllegalArgumentException("No frames: " + frameCount);
+		this.frameCount = frameCount;
+		tracks = new HashMap<Integer, TreeMap<Integer, Keyframe>>();
+	}
+
+	/**
+	 * Constructs a copy of a timeline.
+	 * @param timeline The timeline to be copied
+	 */
+	public Timeline (Timeline timeline)
+	{
+		this(timeline.frameCount);
+		for (Map.Entry<Integer, TreeMap<Integer, Keyframe>> e : timeline.tracks.entrySet())
+			tracks.put(e.getKey(), new TreeMap<Integer, Keyframe>(e.getValue()));
+	}
+
+	/**
+	 * Returns the number of frames.
+	 * @return The number of frames, at least 1
+	 */
+	public int getFrameCount () { return frameCount; }
+
+	/**
+	 * Adds a keyframe with the current position, size and color of a shape,
+	 * replacing an existing keyframe of the shape at the same frame.
+	 * @param s The shape
+	 * @param frame The number of the frame, starting at 0
+	 * @see Keyframe#of(Shape, int)
+	 */
+	public void setKeyframe (Shape s, int frame)
+	{
+		setKeyframe(s, Keyframe.of(s, frame));
+	}
+
+	/**
+	 * Adds a keyframe to the track of a shape, replacing an existing keyframe
+	 * at the same frame.
+	 * @param s The shape
+	 * @param k The keyframe
+	 * @throws IllegalArgumentException If the shape has no id yet, or the frame
+	 * is not part of the timeline
+	 */
+	public void setKeyframe (Shape s, Keyframe k)
+	{
+		if (s.getId() == 0)
+			throw new IllegalArgumentException("Shape isn't part of a model: " + s);
+		if (k.getFrame() >= frameCount)
+			throw new IllegalArgumentException("Frame out of range: " + k.getFrame());
+		TreeMap<Integer, Keyframe> track = tracks.get(s.getId());
+		if (track == null) {
+			track = new TreeMap<Integer, Keyframe>();
+			tracks.put(s.getId(), track);
+		}
+		track.put(k.getFrame(), k);
+	}
+
+	/**
+	 * Removes all keyframes of a shape.
+	 * @param s The shape
+	 */
+	public void removeKeyframes (Shape s)
+	{
+		tracks.remove(s.getId());
+	}
+
+	/**
+	 * Checks if a shape has keyframes.
+	 * @param s The shape
+	 * @return <code>true</code> if the shape changes during the timeline
+	 */
+	public boolean isAnimated (Shape s)
+	{
+		return tracks.containsKey(s.getId());
+	}
+
+	/**
+	 * Returns the state of a shape at a frame.
+	 * @param s The shape
+	 * @param frame The number of the frame, starting at 0
+	 * @return A <code>Keyframe</code> for the frame, which is interpolated
+	 * between the surrounding keyframes, or <code>null</code> if the shape has
+	 * no keyframes
+	 */
+	public Keyframe getState (Shape s, int frame)
+	{
+		TreeMap<Integer, Keyframe> track = tracks.get(s.getId());
+		if (track == null) return null;
+		Map.Entry<Integer, Keyframe> before = track.floorEntry(frame),
+		                             after = track.ceilingEntry(frame);
+		if (before == null) return after.getValue();
+		if (after == null) return before.getValue();
+		return before.getValue().interpolate(after.getValue(), frame);
+	}
+}
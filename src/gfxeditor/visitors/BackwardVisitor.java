@@ -13,6 +13,21 @@ public class BackwardVisitor extends Visitor
 		super(speed);
 	}
 
+	/**
+	 * Moves the images and triangles and resizes the rectangles by kind;
+	 * only the circles are visited individually.
+	 * @param shapes The shapes, grouped by kind
+	 * @since 2.1
+	 */
+	@Override
+	public void visitAll (BulkTransform shapes)
+	{
+		shapes.translate(BulkTransform.IMAGE, -getSpeed(), 0);
+		shapes.resize(BulkTransform.RECTANGLE, -getSpeed(), -getSpeed());
+		shapes.translate(BulkTransform.TRIANGLE, 0, -getSpeed());
+		visitAll(shapes.getShapes(BulkTransform.CIRCLE));
+	}
+
 	public void visitCircle (Circle c)
 	{
 		c.setColor(c.getColor().brighter());
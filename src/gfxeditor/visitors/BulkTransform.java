@@ -0,0 +1,217 @@
+package gfxeditor.visitors;
+
+import gfxeditor.Shape;
+import gfxeditor.shapes.Circle;
+import gfxeditor.shapes.ImageAdapter;
+import gfxeditor.shapes.Rectangle;
+import gfxeditor.shapes.Triangle;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Moves and resizes many shapes at once, by kind.
+ *
+ * <p>The positions and sizes of the shapes are copied into arrays of
+ * primitive values, one per coordinate, and the shapes are grouped by the
+ * visit method they call (their <i>kind</i>), so that every kind occupies a
+ * contiguous range of the arrays. A transformation of one kind is thus a
+ * simple loop over a range of an array, without a method call per shape.
+ * <br>The shapes themselves aren't changed until <code>sync()</code> is called;
+ * only the coordinates that have actually been transformed are written back.
+ *
+ * @author vbwx
+ * @version 1.0
+ * @see Visitor#visitAll(BulkTransform)
+ */
+public class BulkTransform
+{
+	/** The kind of shapes that don't call any visit method. */
+	public static final int OTHER = 0;
+	/** The kind of shapes that call <code>visitRectangle</code>. */
+	public static final int RECTANGLE = 1;
+	/** The kind of shapes that call <code>visitTriangle</code>. */
+	public static final int TRIANGLE = 2;
+	/** The kind of shapes that call <code>visitImage</code>. */
+	public static final int IMAGE = 3;
+	/** The kind of shapes that call <code>visitCircle</code>. */
+	public static final int CIRCLE = 4;
+
+	private static final int KINDS = 5;
+
+	private final Shape[] shapes;
+	private final int[] start;
+	private final int[] x, y, w, h;
+	private final boolean[] movedX, movedY, resized;
+
+	// records which visit method a shape calls
+	private static final class Classifier extends Visitor
+	{
+		int kind;
+
+		Classifier () { super(0); }
+
+		public void visitTriangle (Triangle t) { kind = TRIANGLE; }
+
+		public void visitRectangle (Rectangle r) { kind = RECTANGLE; }
+
+		public void visitImage (ImageAdapter a) { kind = IMAGE; }
+
+		public void visitCircle (Circle c) { kind = CIRCLE; }
+	}
+
+	/**
+	 * Copies the positions and sizes of shapes.
+	 * @param list The <code>Shape</code> objects to be transformed
+	 */
+	public BulkTransform (List<Shape> list)
+	{
+		Shape[] a = list.toArray(new Shape[list.size()]);
+		byte[] kinds = new byte[a.length];
+		start = new int[KINDS + 1];
+		Classifier c = new Classifier();
+		for (int i = 0; i < a.length; i++) {
+			c.kind = OTHER;
+			a[i].accept(c);
+			kinds[i] = (byte)c.kind;
+			start[c.kind + 1]++;
+		}
+		for (int k = 0; k < KINDS; k++)
+			start[k + 1] += start[k];
+		int[] next = Arrays.copyOf(start, KINDS);
+		shapes = new Shape[a.length];
+		for (int i = 0; i < a.length; i++)
+			shapes[next[kinds[i]]++] = a[i];
+		x = new int[a.length];
+		y = new int[a.length];
+		w = new int[a.length];
+		h = new int[a.length];
+		movedX = new boolean[KINDS];
+		movedY = new boolean[KINDS];
+		resized = new boolean[KINDS];
+		reload();
+	}
+
+	/**
+	 * Returns the number of shapes.
+	 * @return The number of shapes of all kinds
+	 */
+	public int size () { return shapes.length; }
+
+	/**
+	 * Returns all shapes, grouped by kind.
+	 * @return An unmodifiable list of <code>Shape</code> objects
+	 */
+	public List<Shape> getShapes ()
+	{
+		return Collections.unmodifiableList(Arrays.asList(shapes));
+	}
+
+	/**
+	 * Returns the shapes of a kind.
+	 * @param kind One of the kinds defined by this class
+	 * @return An unmodifiable list of <code>Shape</code> objects
+	 */
+	public List<Shape> getShapes (int kind)
+	{
+		return getShapes().subList(start[kind], start[kind + 1]);
+	}
+
+	/**
+	 * Moves all shapes of a kind.
+	 * @param kind One of the kinds defined by this class
+	 * @param dx The horizontal distance
+	 * @param dy The vertical distance
+	 */
+	public void translate (int kind, int dx, int dy)
+	{
+		int from = start[kind], to = start[kind + 1];
+		if (dx != 0) {
+			for (int i = from; i < to; i++)
+				x[i] += dx;
+			movedX[kind] = true;
+		}
+		if (dy != 0) {
+			for (int i = from; i < to; i++)
+				y[i] += dy;
+			movedY[kind] = true;
+		}
+	}
+
+	/**
+	 * Changes the width and height of all shapes of a kind.
+	 * @param kind One of the kinds defined by this class
+	 * @param dw The value added to the width
+	 * @param dh The value added to the height
+	 */
+	public void resize (int kind, int dw, int dh)
+	{
+		int from = start[kind], to = start[kind + 1];
+		for (int i = from; i < to; i++)
+			w[i] += dw;
+		for (int i = from; i < to; i++)
+			h[i] += dh;
+		resized[kind] |= dw != 0 || dh != 0;
+	}
+
+	/**
+	 * Scales the positions and sizes of all shapes of a kind, relative to the
+	 * origin. The results are rounded.
+	 * @param kind One of the kinds defined by this class
+	 * @param factor The scale factor
+	 */
+	public void scale (int kind, double factor)
+	{
+		int from = start[kind], to = start[kind + 1];
+		for (int i = from; i < to; i++) {
+			x[i] = (int)Math.round(x[i] * factor);
+			y[i] = (int)Math.round(y[i] * factor);
+			w[i] = (int)Math.round(w[i] * factor);
+			h[i] = (int)Math.round(h[i] * factor);
+		}
+		movedX[kind] = movedY[kind] = resized[kind] = true;
+	}
+
+	/**
+	 * Writes the transformed coordinates back to the shapes.
+	 * Only the coordinates of the kinds that have been transformed are written.
+	 */
+	public void sync ()
+	{
+		for (int k = 0; k < KINDS; k++) {
+			if (!movedX[k] && !movedY[k] && !resized[k]) continue;
+			for (int i = start[k]; i < start[k + 1]; i++) {
+				Shape s = shapes[i];
+				if (movedX[k] && movedY[k])
+					s.setPosition(new Point(x[i], y[i]));
+				else if (movedX[k])
+					s.setX(x[i]);
+				else if (movedY[k])
+					s.setY(y[i]);
+				if (resized[k])
+					s.setSize(w[i], h[i]);
+			}
+			movedX[k] = movedY[k] = resized[k] = false;
+		}
+	}
+
+	/**
+	 * Copies the positions and sizes of the shapes again, discarding the
+	 * transformations that haven't been written back.
+	 * This is necessary after the shapes have been changed individually.
+	 */
+	public void reload ()
+	{
+		for (int i = 0; i < shapes.length; i++) {
+			Shape s = shapes[i];
+			x[i] = s.getX();
+			y[i] = s.getY();
+			w[i] = s.getWidth();
+			h[i] = s.getHeight();
+		}
+		Arrays.fill(movedX, false);
+		Arrays.fill(movedY, false);
+		Arrays.fill(resized, false);
+	}
+}
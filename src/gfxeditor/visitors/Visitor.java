@@ -1,27 +1,114 @@
 package gfxeditor.visitors;
 
+import gfxeditor.Shape;
 import gfxeditor.shapes.Circle;
 import gfxeditor.shapes.ImageAdapter;
 import gfxeditor.shapes.Rectangle;
 import gfxeditor.shapes.Triangle;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 // Extension 3
+/**
+ * Performs an operation on shapes, depending on their type.
+ *
+ * <p><b>Thread safety:</b> <code>visitAll(List)</code> may visit different
+ * shapes on several threads at once. Therefore, a visit method must only
+ * modify the shape it's given, and must not change any state of the visitor
+ * itself or anything else that's shared between shapes (apart from
+ * thread-safe facilities such as <code>Style.of</code>). Each shape is visited
+ * by exactly one thread.
+ *
+ * @author vbwx
+ * @version 2.1
+ */
 public abstract class Visitor
 {
+	/** The number of shapes below which they're visited on the calling thread. */
+	public static final int PARALLEL_THRESHOLD = 4096;
+
+	// the number of shapes a single task visits
+	private static final int CHUNK_SIZE = 1024;
+
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
 	private final int speed;
-	
+
 	public int getSpeed () { return speed; }
-	
+
 	public Visitor (int speed)
 	{
 		this.speed = speed;
 	}
-	
+
+	/**
+	 * Visits every shape of a list.
+	 * Large lists are split into chunks that are visited in parallel; this
+	 * method returns when all shapes have been visited.
+	 * @param shapes The <code>Shape</code> objects, which must not be modified
+	 * by other threads meanwhile
+	 * @since 2.1
+	 */
+	public void visitAll (List<Shape> shapes)
+	{
+		Shape[] a = shapes.toArray(new Shape[shapes.size()]);
+		if (a.length < PARALLEL_THRESHOLD) {
+			for (Shape s : a)
+				s.accept(this);
+		} else {
+			pool.invoke(new Chunk(a, 0, a.length));
+		}
+	}
+
+	/**
+	 * Applies this visitor to the shapes of a <code>BulkTransform</code>.
+	 * By default, the pending transformations are written back to the shapes,
+	 * which are then visited individually, and copied again afterwards.
+	 * Subclasses should override this method to express their geometric changes
+	 * as transformations of whole kinds of shapes instead.
+	 * @param shapes The shapes, grouped by kind
+	 * @see #visitAll(List)
+	 * @since 2.1
+	 */
+	public void visitAll (BulkTransform shapes)
+	{
+		shapes.sync();
+		visitAll(shapes.getShapes());
+		shapes.reload();
+	}
+
+	@SuppressWarnings("serial")
+	private final class Chunk extends RecursiveAction
+	{
+		private final Shape[] shapes;
+		private final int from, to;
+
+		Chunk (Shape[] shapes, int from, int to)
+		{
+			this.shapes = shapes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute ()
+		{
+			if (to - from <= CHUNK_SIZE) {
+				for (int i = from; i < to; i++)
+					shapes[i].accept(Visitor.this);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Chunk(shapes, from, middle), new Chunk(shapes, middle, to));
+			}
+		}
+	}
+
 	public abstract void visitTriangle (Triangle t);
-	
+
 	public abstract void visitRectangle (Rectangle r);
-	
+
 	public abstract void visitImage (ImageAdapter a);
-	
+
 	public abstract void visitCircle (Circle c);
 }